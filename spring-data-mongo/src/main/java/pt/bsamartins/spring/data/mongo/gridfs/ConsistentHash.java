@@ -0,0 +1,78 @@
+package pt.bsamartins.spring.data.mongo.gridfs;
+
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable consistent hash ring placing keys on nodes through a number of virtual nodes per node.
+ *
+ * @author Bernardo Martins
+ */
+final class ConsistentHash<T> {
+
+    static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final int virtualNodes;
+    private final TreeMap<Long, T> ring;
+
+    ConsistentHash(int virtualNodes) {
+        this(virtualNodes, new TreeMap<>());
+    }
+
+    private ConsistentHash(int virtualNodes, TreeMap<Long, T> ring) {
+        Assert.isTrue(virtualNodes > 0, "virtualNodes must be greater than 0");
+
+        this.virtualNodes = virtualNodes;
+        this.ring = ring;
+    }
+
+    /**
+     * Creates a new ring additionally holding the given node
+     *
+     * @param name must not be {@literal null}, must be stable across restarts
+     * @param node must not be {@literal null}
+     * @return the new ring
+     */
+    ConsistentHash<T> with(String name, T node) {
+        TreeMap<Long, T> copy = new TreeMap<>(ring);
+        for (int i = 0; i < virtualNodes; i++) {
+            copy.put(hash(name + "#" + i), node);
+        }
+        return new ConsistentHash<>(virtualNodes, copy);
+    }
+
+    /**
+     * Gets the node owning the given key
+     *
+     * @param key must not be {@literal null}
+     * @return the owning node
+     */
+    T get(String key) {
+        Assert.state(!ring.isEmpty(), "Hash ring has no nodes");
+
+        Map.Entry<Long, T> entry = ring.ceilingEntry(hash(key));
+        return entry == null ? ring.firstEntry().getValue() : entry.getValue();
+    }
+
+    private static long hash(String key) {
+        byte[] digest = md5().digest(key.getBytes(StandardCharsets.UTF_8));
+        long hash = 0;
+        for (int i = 0; i < 8; i++) {
+            hash = (hash << 8) | (digest[i] & 0xFF);
+        }
+        return hash;
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package pt.bsamartins.spring.data.mongo.gridfs;
+
+import org.bson.BsonValue;
+import reactor.core.publisher.Mono;
+
+/**
+ * Keeps track of the files already handled by a named GridFS transfer.
+ *
+ * @author Bernardo Martins
+ */
+public interface GridFsCheckpointStore {
+
+    /**
+     * Transfer state of a file.
+     */
+    enum State {
+
+        /**
+         * The transfer of the file was not started.
+         */
+        PENDING,
+
+        /**
+         * The transfer of the file was started but not completed, the target may hold a partial copy.
+         */
+        IN_PROGRESS,
+
+        /**
+         * The file was transferred.
+         */
+        COMPLETED
+    }
+
+    /**
+     * Gets the transfer state of the given file.
+     *
+     * @param checkpointName must not be {@literal null}.
+     * @param fileId must not be {@literal null}.
+     * @return the state of the file, {@link State#PENDING} when nothing was recorded for it.
+     */
+    Mono<State> getState(String checkpointName, BsonValue fileId);
+
+    /**
+     * Records that the given file is about to be written to the target.
+     *
+     * @param checkpointName must not be {@literal null}.
+     * @param fileId must not be {@literal null}.
+     * @return completion signal
+     */
+    Mono<Void> markInProgress(String checkpointName, BsonValue fileId);
+
+    /**
+     * Records the given file as transferred.
+     *
+     * @param checkpointName must not be {@literal null}.
+     * @param fileId must not be {@literal null}.
+     * @return completion signal
+     */
+    Mono<Void> markCompleted(String checkpointName, BsonValue fileId);
+}
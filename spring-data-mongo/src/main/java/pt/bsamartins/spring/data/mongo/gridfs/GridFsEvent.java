@@ -0,0 +1,94 @@
+package pt.bsamartins.spring.data.mongo.gridfs;
+
+import com.mongodb.client.gridfs.model.GridFSFile;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+/**
+ * Change to a GridFS bucket as observed on its files collection.
+ *
+ * @author Bernardo Martins
+ */
+public final class GridFsEvent {
+
+    /**
+     * Kind of change
+     */
+    public enum Type {
+
+        /**
+         * A file was completely stored, all its chunks are readable.
+         */
+        STORED,
+
+        /**
+         * A file was deleted.
+         */
+        DELETED,
+
+        /**
+         * The file document, e.g. its metadata, was updated.
+         */
+        METADATA_UPDATED
+    }
+
+    private final Type type;
+    private final BsonValue id;
+    private final GridFSFile file;
+    private final BsonDocument resumeToken;
+
+    GridFsEvent(Type type, BsonValue id, @Nullable GridFSFile file, BsonDocument resumeToken) {
+        Assert.notNull(type, "type must not be null");
+        Assert.notNull(id, "id must not be null");
+        Assert.notNull(resumeToken, "resumeToken must not be null");
+
+        this.type = type;
+        this.id = id;
+        this.file = file;
+        this.resumeToken = resumeToken;
+    }
+
+    /**
+     * Gets the kind of change
+     *
+     * @return the event type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the id of the changed file
+     *
+     * @return the file id
+     */
+    public BsonValue getId() {
+        return id;
+    }
+
+    /**
+     * Gets the current file document
+     *
+     * @return the file, {@literal null} for deletions or when the file was deleted since
+     */
+    @Nullable
+    public GridFSFile getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the change stream token to resume after this event
+     *
+     * @return the resume token
+     */
+    public BsonDocument getResumeToken() {
+        return resumeToken;
+    }
+
+    @Override
+    public String toString() {
+        return "GridFsEvent{type=" + type + ", id=" + id + "}";
+    }
+}
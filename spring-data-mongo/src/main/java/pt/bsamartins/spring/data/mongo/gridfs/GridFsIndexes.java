@@ -0,0 +1,192 @@
+package pt.bsamartins.spring.data.mongo.gridfs;
+
+import com.mongodb.client.model.Collation;
+import com.mongodb.client.model.CollationAlternate;
+import com.mongodb.client.model.CollationCaseFirst;
+import com.mongodb.client.model.CollationMaxVariable;
+import com.mongodb.client.model.CollationStrength;
+import com.mongodb.client.model.IndexOptions;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mapping.PropertyHandler;
+import org.springframework.data.mapping.context.MappingContext;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexDirection;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Derives and translates the index definitions of a bucket's files collection.
+ *
+ * @author Bernardo Martins
+ */
+final class GridFsIndexes {
+
+    private static final String METADATA_PREFIX = "metadata.";
+
+    private GridFsIndexes() {
+    }
+
+    /**
+     * Collects an index for every top level property of the given metadata type annotated with {@link Indexed}.
+     */
+    static List<IndexDefinition> metadataIndexes(MappingContext<? extends MongoPersistentEntity<?>, MongoPersistentProperty> mappingContext,
+                                                 Class<?> metadataType) {
+
+        MongoPersistentEntity<?> entity = mappingContext.getRequiredPersistentEntity(metadataType);
+        List<IndexDefinition> indexes = new ArrayList<>();
+
+        entity.doWithProperties((PropertyHandler<MongoPersistentProperty>) property -> {
+
+            Indexed indexed = property.findAnnotation(Indexed.class);
+
+            if (indexed != null) {
+                indexes.add(toIndex(METADATA_PREFIX + property.getFieldName(), indexed));
+            }
+        });
+
+        return indexes;
+    }
+
+    /**
+     * Translates the options of an {@link IndexDefinition}, such as those of an {@link Index},
+     * {@link org.springframework.data.mongodb.core.index.TextIndexDefinition} or
+     * {@link org.springframework.data.mongodb.core.index.GeospatialIndex}. Options that cannot be translated are
+     * rejected rather than dropped, as the index created would differ from the one defined.
+     */
+    static IndexOptions toIndexOptions(Document options) {
+
+        IndexOptions indexOptions = new IndexOptions();
+
+        options.forEach((key, value) -> {
+            switch (key) {
+                case "name":
+                    indexOptions.name((String) value);
+                    break;
+                case "unique":
+                    indexOptions.unique((Boolean) value);
+                    break;
+                case "sparse":
+                    indexOptions.sparse((Boolean) value);
+                    break;
+                case "background":
+                    indexOptions.background((Boolean) value);
+                    break;
+                case "expireAfterSeconds":
+                    indexOptions.expireAfter(((Number) value).longValue(), TimeUnit.SECONDS);
+                    break;
+                case "partialFilterExpression":
+                    indexOptions.partialFilterExpression((Document) value);
+                    break;
+                case "collation":
+                    indexOptions.collation(toCollation((Document) value));
+                    break;
+                case "weights":
+                    indexOptions.weights((Document) value);
+                    break;
+                case "default_language":
+                    indexOptions.defaultLanguage((String) value);
+                    break;
+                case "language_override":
+                    indexOptions.languageOverride((String) value);
+                    break;
+                case "textIndexVersion":
+                    indexOptions.textVersion(((Number) value).intValue());
+                    break;
+                case "2dsphereIndexVersion":
+                    indexOptions.sphereVersion(((Number) value).intValue());
+                    break;
+                case "bits":
+                    indexOptions.bits(((Number) value).intValue());
+                    break;
+                case "min":
+                    indexOptions.min(((Number) value).doubleValue());
+                    break;
+                case "max":
+                    indexOptions.max(((Number) value).doubleValue());
+                    break;
+                case "bucketSize":
+                    indexOptions.bucketSize(((Number) value).doubleValue());
+                    break;
+                case "storageEngine":
+                    indexOptions.storageEngine((Document) value);
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format("Unsupported index option `%s`", key));
+            }
+        });
+
+        return indexOptions;
+    }
+
+    private static Collation toCollation(Document collation) {
+
+        Collation.Builder builder = Collation.builder();
+
+        collation.forEach((key, value) -> {
+            switch (key) {
+                case "locale":
+                    builder.locale((String) value);
+                    break;
+                case "caseLevel":
+                    builder.caseLevel((Boolean) value);
+                    break;
+                case "caseFirst":
+                    builder.collationCaseFirst(CollationCaseFirst.fromString((String) value));
+                    break;
+                case "strength":
+                    builder.collationStrength(CollationStrength.fromInt(((Number) value).intValue()));
+                    break;
+                case "numericOrdering":
+                    builder.numericOrdering((Boolean) value);
+                    break;
+                case "alternate":
+                    builder.collationAlternate(CollationAlternate.fromString((String) value));
+                    break;
+                case "maxVariable":
+                    builder.collationMaxVariable(CollationMaxVariable.fromString((String) value));
+                    break;
+                case "normalization":
+                    builder.normalization((Boolean) value);
+                    break;
+                case "backwards":
+                    builder.backwards((Boolean) value);
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format("Unsupported collation option `%s`", key));
+            }
+        });
+
+        return builder.build();
+    }
+
+    private static Index toIndex(String key, Indexed indexed) {
+
+        Index index = new Index().on(key, indexed.direction() == IndexDirection.DESCENDING ? Sort.Direction.DESC : Sort.Direction.ASC);
+
+        if (StringUtils.hasText(indexed.name())) {
+            index.named(indexed.name());
+        }
+        if (indexed.unique()) {
+            index.unique();
+        }
+        if (indexed.sparse()) {
+            index.sparse();
+        }
+        if (indexed.background()) {
+            index.background();
+        }
+        if (indexed.expireAfterSeconds() >= 0) {
+            index.expire(indexed.expireAfterSeconds());
+        }
+
+        return index;
+    }
+}
@@ -0,0 +1,94 @@
+package pt.bsamartins.spring.data.mongo.gridfs;
+
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWrapper;
+import org.bson.BsonDocumentWriter;
+import org.bson.Document;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecConfigurationException;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.lang.Nullable;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps typed file metadata with the {@link Codec} registered for its class, falling back to the {@link MongoConverter}
+ * for classes without one. Codecs are resolved once per class.
+ *
+ * @author Bernardo Martins
+ */
+class GridFsMetadataMapper {
+
+    private final MongoConverter converter;
+    private final Map<Class<?>, Optional<Codec<?>>> codecs = new ConcurrentHashMap<>();
+    private volatile CodecRegistry codecRegistry;
+    private volatile DocumentCodec documentCodec;
+
+    GridFsMetadataMapper(MongoConverter converter) {
+        this.converter = converter;
+    }
+
+    void setCodecRegistry(@Nullable CodecRegistry codecRegistry) {
+        this.codecRegistry = codecRegistry;
+        this.documentCodec = codecRegistry == null ? null : new DocumentCodec(codecRegistry);
+        this.codecs.clear();
+    }
+
+    /**
+     * Writes the given metadata into the given document. Codec encoded values are kept as {@link org.bson.BsonValue}s,
+     * which the driver writes as they are.
+     */
+    void write(Object metadata, Document target) {
+
+        Codec<Object> codec = getCodec(metadata.getClass());
+
+        if (codec == null) {
+            converter.write(metadata, target);
+            return;
+        }
+
+        BsonDocument encoded = new BsonDocument();
+        codec.encode(new BsonDocumentWriter(encoded), metadata, EncoderContext.builder().build());
+        target.putAll(encoded);
+    }
+
+    <T> T read(Document metadata, Class<T> type) {
+
+        Codec<T> codec = getCodec(type);
+
+        if (codec == null) {
+            return converter.read(type, metadata);
+        }
+
+        BsonDocument source = new BsonDocumentWrapper<>(metadata, documentCodec);
+        return codec.decode(new BsonDocumentReader(source), DecoderContext.builder().build());
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private <T> Codec<T> getCodec(Class<?> type) {
+
+        CodecRegistry registry = codecRegistry;
+
+        if (registry == null) {
+            return null;
+        }
+
+        return (Codec<T>) codecs.computeIfAbsent(type, key -> lookup(registry, key)).orElse(null);
+    }
+
+    private static Optional<Codec<?>> lookup(CodecRegistry registry, Class<?> type) {
+        try {
+            return Optional.<Codec<?>>of(registry.get(type));
+        } catch (CodecConfigurationException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package pt.bsamartins.spring.data.mongo.gridfs;
+
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Times a sample of the queries against a bucket's files collection and checks their plan with a {@literal queryPlanner}
+ * explain, which does not run the query, reporting collection scans and queries slow to return their first result.
+ * Explains run in the background, never delay the sampled query and are capped in number.
+ *
+ * @author Bernardo Martins
+ */
+public final class GridFsQueryDiagnostics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GridFsQueryDiagnostics.class);
+
+    private static final String COLLECTION_SCAN = "COLLSCAN";
+
+    private double sampleRate = 0.01;
+    private Duration slowThreshold = Duration.ofMillis(100);
+    private int maxConcurrentExplains = 2;
+    private boolean logFilterValues;
+    private Consumer<GridFsQueryReport> listener = report -> { };
+
+    private final AtomicInteger explainsInFlight = new AtomicInteger();
+
+    /**
+     * Sets the fraction of queries to explain.
+     *
+     * @param sampleRate between 0 and 1
+     * @return this
+     */
+    public GridFsQueryDiagnostics sampleRate(double sampleRate) {
+        Assert.isTrue(sampleRate >= 0 && sampleRate <= 1, "sampleRate must be between 0 and 1");
+        this.sampleRate = sampleRate;
+        return this;
+    }
+
+    /**
+     * Sets the time to the first result above which a query is reported as slow.
+     *
+     * @param slowThreshold must not be {@literal null}
+     * @return this
+     */
+    public GridFsQueryDiagnostics slowThreshold(Duration slowThreshold) {
+        Assert.notNull(slowThreshold, "slowThreshold must not be null");
+        this.slowThreshold = slowThreshold;
+        return this;
+    }
+
+    /**
+     * Sets the number of explains that may run at the same time, sampled queries beyond it are not checked.
+     *
+     * @param maxConcurrentExplains must be positive
+     * @return this
+     */
+    public GridFsQueryDiagnostics maxConcurrentExplains(int maxConcurrentExplains) {
+        Assert.isTrue(maxConcurrentExplains > 0, "maxConcurrentExplains must be positive");
+        this.maxConcurrentExplains = maxConcurrentExplains;
+        return this;
+    }
+
+    /**
+     * Sets whether the logged reports include the values of the query filter, which may hold sensitive data. Only the
+     * filter shape is logged by default.
+     *
+     * @param logFilterValues {@literal true} to log the full filter
+     * @return this
+     */
+    public GridFsQueryDiagnostics logFilterValues(boolean logFilterValues) {
+        this.logFilterValues = logFilterValues;
+        return this;
+    }
+
+    /**
+     * Sets the listener receiving the reports of collection scans and slow plans, e.g. to record metrics. They are
+     * logged regardless.
+     *
+     * @param listener must not be {@literal null}
+     * @return this
+     */
+    public GridFsQueryDiagnostics listener(Consumer<GridFsQueryReport> listener) {
+        Assert.notNull(listener, "listener must not be null");
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Times the given query from subscription to its first result, or completion when empty, when it is sampled.
+     */
+    <T> Flux<T> observe(Flux<T> query, MongoDatabase db, String collection, Document filter, Document sort) {
+
+        return Flux.defer(() -> {
+
+            if (ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+                return query;
+            }
+
+            long start = System.nanoTime();
+            AtomicBoolean timed = new AtomicBoolean();
+            Runnable firstSignal = () -> {
+                if (timed.compareAndSet(false, true)) {
+                    explain(db, collection, filter, sort, Duration.ofNanos(System.nanoTime() - start));
+                }
+            };
+
+            return query
+                    .doOnNext(element -> firstSignal.run())
+                    .doOnComplete(firstSignal);
+        });
+    }
+
+    private void explain(MongoDatabase db, String collection, Document filter, Document sort, Duration latency) {
+
+        if (explainsInFlight.incrementAndGet() > maxConcurrentExplains) {
+            explainsInFlight.decrementAndGet();
+            LOGGER.debug("Skipped explaining query on `{}`, {} explains in flight", collection, maxConcurrentExplains);
+            return;
+        }
+
+        Document find = new Document("find", collection).append("filter", filter);
+
+        if (!sort.isEmpty()) {
+            find.append("sort", sort);
+        }
+
+        Mono.from(db.runCommand(new Document("explain", find).append("verbosity", "queryPlanner")))
+                .map(explain -> new GridFsQueryReport(collection, filter, isCollectionScan(explain), latency.toMillis()))
+                .filter(report -> report.isCollectionScan() || latency.compareTo(slowThreshold) > 0)
+                .doFinally(signal -> explainsInFlight.decrementAndGet())
+                .subscribe(this::report, e -> LOGGER.debug("Could not explain query on `{}`", collection, e));
+    }
+
+    private void report(GridFsQueryReport report) {
+
+        if (logFilterValues) {
+            LOGGER.warn("Inefficient GridFS query on {}, filter {}", report, report.getFilter().toJson());
+        } else {
+            LOGGER.warn("Inefficient GridFS query on {}", report);
+        }
+
+        listener.accept(report);
+    }
+
+    private static boolean isCollectionScan(Document explain) {
+        Document queryPlanner = (Document) explain.get("queryPlanner");
+        return queryPlanner != null && containsStage((Document) queryPlanner.get("winningPlan"), COLLECTION_SCAN);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean containsStage(@Nullable Document plan, String stage) {
+
+        if (plan == null) {
+            return false;
+        }
+
+        if (stage.equals(plan.getString("stage")) || containsStage((Document) plan.get("inputStage"), stage)) {
+            return true;
+        }
+
+        List<Document> inputStages = (List<Document>) plan.get("inputStages");
+        return inputStages != null && inputStages.stream().anyMatch(input -> containsStage(input, stage));
+    }
+}
@@ -0,0 +1,95 @@
+package pt.bsamartins.spring.data.mongo.gridfs;
+
+import org.bson.Document;
+
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Plan summary and latency of a sampled query against a bucket's files collection.
+ *
+ * @author Bernardo Martins
+ */
+public final class GridFsQueryReport {
+
+    private static final String PLACEHOLDER = "?";
+
+    private final String collection;
+    private final Document filter;
+    private final boolean collectionScan;
+    private final long latencyMillis;
+
+    GridFsQueryReport(String collection, Document filter, boolean collectionScan, long latencyMillis) {
+        this.collection = collection;
+        this.filter = filter;
+        this.collectionScan = collectionScan;
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Gets the queried collection
+     *
+     * @return the collection name
+     */
+    public String getCollection() {
+        return collection;
+    }
+
+    /**
+     * Gets the mapped query filter
+     *
+     * @return the filter
+     */
+    public Document getFilter() {
+        return filter;
+    }
+
+    /**
+     * Gets the mapped query filter with every value replaced by {@literal ?}
+     *
+     * @return the filter shape
+     */
+    public Document getFilterShape() {
+        return (Document) shape(filter);
+    }
+
+    /**
+     * Checks whether the winning plan scans the whole collection
+     *
+     * @return {@literal true} for a COLLSCAN
+     */
+    public boolean isCollectionScan() {
+        return collectionScan;
+    }
+
+    /**
+     * Gets the time the query took to return its first result, or to complete without results
+     *
+     * @return the latency in milliseconds
+     */
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s: %s, first result after %d ms", collection, getFilterShape().toJson(),
+                collectionScan ? "COLLSCAN" : "indexed", latencyMillis);
+    }
+
+    private static Object shape(Object value) {
+
+        if (value instanceof Document) {
+            Document shape = new Document();
+            ((Document) value).forEach((key, nested) -> shape.put(key, shape(nested)));
+            return shape;
+        }
+
+        if (value instanceof List) {
+            return ((List<?>) value).stream().map(GridFsQueryReport::shape).collect(toList());
+        }
+
+        return PLACEHOLDER;
+    }
+}
@@ -0,0 +1,29 @@
+package pt.bsamartins.spring.data.mongo.gridfs;
+
+import org.bson.BsonDocument;
+import reactor.core.publisher.Mono;
+
+/**
+ * Keeps the change stream position of named GridFS watches.
+ *
+ * @author Bernardo Martins
+ */
+public interface GridFsResumeTokenStore {
+
+    /**
+     * Loads the last token saved for the given watch.
+     *
+     * @param watchName must not be {@literal null}.
+     * @return the resume token or an empty {@link Mono} if the watch never saved one.
+     */
+    Mono<BsonDocument> load(String watchName);
+
+    /**
+     * Saves the token to resume the given watch from.
+     *
+     * @param watchName must not be {@literal null}.
+     * @param resumeToken must not be {@literal null}.
+     * @return completion signal
+     */
+    Mono<Void> save(String watchName, BsonDocument resumeToken);
+}
@@ -0,0 +1,294 @@
+package pt.bsamartins.spring.data.mongo.gridfs;
+
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import com.mongodb.reactivestreams.client.gridfs.GridFSBucket;
+import com.mongodb.reactivestreams.client.gridfs.GridFSBuckets;
+import org.bson.BsonBinary;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonNull;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copies the files matching a filter from one GridFS bucket into another. Chunk documents are copied as they are when
+ * the target chunk size matches the source one, otherwise the content is re-chunked, while the files document is
+ * always kept, including its upload date. Each file is transferred with the same id. Leftovers of a checkpointed
+ * attempt and identical copies are replaced, while a different file with the same id in the target fails the transfer.
+ *
+ * @author Bernardo Martins
+ */
+class GridFsTransfer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GridFsTransfer.class);
+
+    private static final int CHUNK_BATCH_SIZE = 16;
+
+    private final MongoDatabase source;
+    private final String sourceBucket;
+    private final MongoDatabase target;
+    private final String targetBucket;
+    private final GridFsTransferOptions options;
+    private final boolean deleteSource;
+
+    GridFsTransfer(MongoDatabase source, String sourceBucket, MongoDatabase target, String targetBucket,
+                   GridFsTransferOptions options, boolean deleteSource) {
+        this.source = source;
+        this.sourceBucket = sourceBucket;
+        this.target = target;
+        this.targetBucket = targetBucket;
+        this.options = options;
+        this.deleteSource = deleteSource;
+    }
+
+    Mono<GridFsTransferResult> execute(Document filter) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+
+            AtomicLong files = new AtomicLong();
+            AtomicLong bytes = new AtomicLong();
+
+            return verifyDistinctTarget()
+                    .thenMany(filesCollection(source, sourceBucket).find(filter))
+                    .flatMap(this::transferIfPending, options.getParallelism())
+                    .doOnNext(length -> {
+                        files.incrementAndGet();
+                        bytes.addAndGet(length);
+                    })
+                    .then(Mono.fromSupplier(() ->
+                            new GridFsTransferResult(files.get(), bytes.get(), Duration.ofNanos(System.nanoTime() - start))))
+                    .doOnNext(result -> LOGGER.info("Transferred {} from `{}` to `{}`", result, sourceBucket, targetBucket));
+        });
+    }
+
+    /**
+     * Rejects a target that is the source bucket itself. Databases and buckets with the same names are told apart by
+     * the UUID the server assigns to the files collection, as they may live on different clusters.
+     */
+    private Mono<Void> verifyDistinctTarget() {
+        if (!source.getName().equals(target.getName()) || !sourceBucket.equals(targetBucket)) {
+            return Mono.empty();
+        }
+
+        Mono<BsonValue> sourceUuid = collectionUuid(source, sourceBucket);
+        Mono<BsonValue> targetUuid = collectionUuid(target, targetBucket);
+
+        return Mono.zip(sourceUuid, targetUuid)
+                .filter(uuids -> uuids.getT1().isNull() || uuids.getT2().isNull() || uuids.getT1().equals(uuids.getT2()))
+                .flatMap(uuids -> Mono.<Void>error(new IllegalArgumentException(
+                        String.format("Transfer target must not be the source bucket `%s`!", sourceBucket))));
+    }
+
+    private static Mono<BsonValue> collectionUuid(MongoDatabase db, String bucket) {
+        return Mono.from(db.listCollections(BsonDocument.class).filter(new BsonDocument("name", new BsonString(bucket + ".files"))).first())
+                .map(collection -> collection.getDocument("info", new BsonDocument()).get("uuid", BsonNull.VALUE));
+    }
+
+    /**
+     * Transfers the given file unless its checkpoint records it as completed, emitting its length once transferred.
+     */
+    private Mono<Long> transferIfPending(BsonDocument file) {
+        BsonValue id = file.get("_id");
+        GridFsCheckpointStore checkpointStore = options.getCheckpointStore();
+        String checkpointName = options.getCheckpointName();
+
+        if (checkpointStore == null) {
+            return transfer(file, false);
+        }
+
+        return checkpointStore.getState(checkpointName, id)
+                .filter(state -> state != GridFsCheckpointStore.State.COMPLETED)
+                .flatMap(state -> checkpointStore.markInProgress(checkpointName, id)
+                        .then(transfer(file, state == GridFsCheckpointStore.State.IN_PROGRESS))
+                        .flatMap(length -> checkpointStore.markCompleted(checkpointName, id).then(Mono.just(length))));
+    }
+
+    private Mono<Long> transfer(BsonDocument file, boolean resumed) {
+        BsonValue id = file.get("_id");
+        long length = file.getNumber("length").longValue();
+        int chunkSize = file.getNumber("chunkSize").intValue();
+        Integer targetChunkSize = options.getChunkSizeBytes();
+
+        Mono<Void> copy = targetChunkSize == null || targetChunkSize == chunkSize ? copyChunks(file) : rechunk(file, targetChunkSize);
+        Mono<Void> cleanup = deleteSource ? Mono.from(bucket(source, sourceBucket).delete(id)).then() : Mono.empty();
+
+        return prepareTarget(file, resumed)
+                .then(copy)
+                .then(cleanup)
+                .then(Mono.fromSupplier(() -> {
+                    LOGGER.debug("Transferred file with id `{}` ({} bytes)", id, length);
+                    return length;
+                }));
+    }
+
+    /**
+     * Clears what an earlier attempt left of the given file in the target. Without a checkpoint recording that attempt,
+     * only an identical copy of the file is replaced, any other file with the same id fails the transfer.
+     */
+    private Mono<Void> prepareTarget(BsonDocument file, boolean resumed) {
+        BsonValue id = file.get("_id");
+
+        if (resumed) {
+            return clearTarget(id);
+        }
+
+        return Mono.from(filesCollection(target, targetBucket).find(new BsonDocument("_id", id)).first())
+                .flatMap(existing -> isSameFile(existing, file) ? clearTarget(id).then(Mono.just(Boolean.TRUE))
+                        : Mono.<Boolean>error(collision(id)))
+                .switchIfEmpty(Mono.defer(() -> Mono.from(chunksCollection(target, targetBucket).count(new BsonDocument("files_id", id)))
+                        .flatMap(chunks -> chunks > 0 ? Mono.<Boolean>error(collision(id)) : Mono.just(Boolean.FALSE))))
+                .then();
+    }
+
+    private static boolean isSameFile(BsonDocument existing, BsonDocument file) {
+        if (existing.getNumber("length").longValue() != file.getNumber("length").longValue()) {
+            return false;
+        }
+        if (existing.containsKey("md5") && file.containsKey("md5")) {
+            return existing.get("md5").equals(file.get("md5"));
+        }
+        return existing.get("uploadDate").equals(file.get("uploadDate"));
+    }
+
+    private DuplicateKeyException collision(BsonValue id) {
+        return new DuplicateKeyException(String.format("A different file with id `%s` already exists in `%s`", id, targetBucket));
+    }
+
+    private Mono<Void> clearTarget(BsonValue id) {
+        return Mono.from(filesCollection(target, targetBucket).deleteOne(new BsonDocument("_id", id)))
+                .then(Mono.from(chunksCollection(target, targetBucket).deleteMany(new BsonDocument("files_id", id))))
+                .then();
+    }
+
+    private Mono<Void> copyChunks(BsonDocument file) {
+        BsonDocument chunkFilter = new BsonDocument("files_id", file.get("_id"));
+
+        return Flux.from(chunksCollection(source, sourceBucket).find(chunkFilter).sort(new BsonDocument("n", new BsonInt32(1))))
+                .buffer(CHUNK_BATCH_SIZE)
+                .concatMap(batch -> Mono.from(chunksCollection(target, targetBucket).insertMany(batch)))
+                .then(Mono.from(filesCollection(target, targetBucket).insertOne(file)))
+                .then();
+    }
+
+    /**
+     * Splits the source chunks into chunks of the given size and inserts the source files document with only its chunk
+     * size, and md5 when present, changed, so the upload date and any other field are kept.
+     */
+    private Mono<Void> rechunk(BsonDocument file, int chunkSizeBytes) {
+        BsonValue id = file.get("_id");
+        BsonDocument chunkFilter = new BsonDocument("files_id", id);
+
+        return Mono.defer(() -> {
+            Rechunker rechunker = new Rechunker(id, chunkSizeBytes, file.containsKey("md5"));
+
+            return Flux.from(chunksCollection(source, sourceBucket).find(chunkFilter).sort(new BsonDocument("n", new BsonInt32(1))))
+                    .concatMapIterable(chunk -> rechunker.append(chunk.getBinary("data").getData()))
+                    .concatWith(Mono.fromCallable(rechunker::flush))
+                    .buffer(CHUNK_BATCH_SIZE)
+                    .concatMap(batch -> Mono.from(chunksCollection(target, targetBucket).insertMany(batch)))
+                    .then(Mono.fromCallable(() -> rechunker.rewrite(file)))
+                    .flatMap(rewritten -> Mono.from(filesCollection(target, targetBucket).insertOne(rewritten)))
+                    .then();
+        });
+    }
+
+    private static GridFSBucket bucket(MongoDatabase db, String bucket) {
+        return GridFSBuckets.create(db, bucket);
+    }
+
+    private static MongoCollection<BsonDocument> filesCollection(MongoDatabase db, String bucket) {
+        return db.getCollection(bucket + ".files", BsonDocument.class);
+    }
+
+    private static MongoCollection<BsonDocument> chunksCollection(MongoDatabase db, String bucket) {
+        return db.getCollection(bucket + ".chunks", BsonDocument.class);
+    }
+
+    /**
+     * Buffers the content of a file into chunks of a fixed size, computing its md5 on the way when asked to.
+     */
+    private static final class Rechunker {
+
+        private final BsonValue fileId;
+        private final byte[] pending;
+        private final MessageDigest md5;
+        private int position;
+        private int n;
+
+        Rechunker(BsonValue fileId, int chunkSizeBytes, boolean md5) {
+            this.fileId = fileId;
+            this.pending = new byte[chunkSizeBytes];
+            this.md5 = md5 ? newMd5() : null;
+        }
+
+        List<BsonDocument> append(byte[] data) {
+            if (md5 != null) {
+                md5.update(data);
+            }
+
+            List<BsonDocument> chunks = new ArrayList<>();
+            int offset = 0;
+
+            while (offset < data.length) {
+                int length = Math.min(pending.length - position, data.length - offset);
+                System.arraycopy(data, offset, pending, position, length);
+                position += length;
+                offset += length;
+
+                if (position == pending.length) {
+                    chunks.add(chunk(pending.length));
+                }
+            }
+
+            return chunks;
+        }
+
+        @Nullable
+        BsonDocument flush() {
+            return position == 0 ? null : chunk(position);
+        }
+
+        BsonDocument rewrite(BsonDocument file) {
+            BsonDocument rewritten = file.clone().append("chunkSize", new BsonInt32(pending.length));
+
+            if (md5 != null) {
+                rewritten.put("md5", new BsonString(String.format("%032x", new BigInteger(1, md5.digest()))));
+            }
+
+            return rewritten;
+        }
+
+        private BsonDocument chunk(int length) {
+            BsonDocument chunk = new BsonDocument("files_id", fileId)
+                    .append("n", new BsonInt32(n++))
+                    .append("data", new BsonBinary(Arrays.copyOf(pending, length)));
+            position = 0;
+            return chunk;
+        }
+
+        private static MessageDigest newMd5() {
+            try {
+                return MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("MD5 is not available", e);
+            }
+        }
+    }
+}
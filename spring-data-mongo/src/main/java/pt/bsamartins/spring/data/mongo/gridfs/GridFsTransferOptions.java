@@ -0,0 +1,113 @@
+package pt.bsamartins.spring.data.mongo.gridfs;
+
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+/**
+ * Options describing the target of a GridFS copy or move.
+ *
+ * @author Bernardo Martins
+ */
+public final class GridFsTransferOptions {
+
+    static final int DEFAULT_PARALLELISM = 4;
+
+    private ReactiveMongoDatabaseFactory databaseFactory;
+    private String bucket;
+    private Integer chunkSizeBytes;
+    private int parallelism = DEFAULT_PARALLELISM;
+    private GridFsCheckpointStore checkpointStore;
+    private String checkpointName;
+
+    /**
+     * Sets the database the files are transferred to. Defaults to the source database.
+     *
+     * @param databaseFactory can be {@literal null}
+     * @return this
+     */
+    public GridFsTransferOptions databaseFactory(@Nullable ReactiveMongoDatabaseFactory databaseFactory) {
+        this.databaseFactory = databaseFactory;
+        return this;
+    }
+
+    /**
+     * Sets the bucket the files are transferred to. Defaults to the source bucket name.
+     *
+     * @param bucket can be {@literal null}
+     * @return this
+     */
+    public GridFsTransferOptions bucket(@Nullable String bucket) {
+        this.bucket = bucket;
+        return this;
+    }
+
+    /**
+     * Sets the chunk size of the transferred files. Defaults to the chunk size of each source file, in which case the
+     * chunk documents are copied as they are.
+     *
+     * @param chunkSizeBytes can be {@literal null}
+     * @return this
+     */
+    public GridFsTransferOptions chunkSizeBytes(@Nullable Integer chunkSizeBytes) {
+        Assert.isTrue(chunkSizeBytes == null || chunkSizeBytes > 0, "chunkSizeBytes must be greater than 0");
+        this.chunkSizeBytes = chunkSizeBytes;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of files transferred concurrently.
+     *
+     * @param parallelism must be greater than 0
+     * @return this
+     */
+    public GridFsTransferOptions parallelism(int parallelism) {
+        Assert.isTrue(parallelism > 0, "parallelism must be greater than 0");
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Records every transferred file under the given name so that an interrupted transfer resumes where it stopped.
+     *
+     * @param checkpointStore must not be {@literal null}
+     * @param checkpointName must not be {@literal null} or empty
+     * @return this
+     */
+    public GridFsTransferOptions checkpoint(GridFsCheckpointStore checkpointStore, String checkpointName) {
+        Assert.notNull(checkpointStore, "checkpointStore must not be null");
+        Assert.hasText(checkpointName, "checkpointName must not be null or empty");
+        this.checkpointStore = checkpointStore;
+        this.checkpointName = checkpointName;
+        return this;
+    }
+
+    @Nullable
+    public ReactiveMongoDatabaseFactory getDatabaseFactory() {
+        return databaseFactory;
+    }
+
+    @Nullable
+    public String getBucket() {
+        return bucket;
+    }
+
+    @Nullable
+    public Integer getChunkSizeBytes() {
+        return chunkSizeBytes;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    @Nullable
+    public GridFsCheckpointStore getCheckpointStore() {
+        return checkpointStore;
+    }
+
+    @Nullable
+    public String getCheckpointName() {
+        return checkpointName;
+    }
+}
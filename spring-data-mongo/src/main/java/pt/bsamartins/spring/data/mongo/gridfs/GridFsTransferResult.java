@@ -0,0 +1,88 @@
+package pt.bsamartins.spring.data.mongo.gridfs;
+
+import java.time.Duration;
+
+/**
+ * Outcome of a GridFS copy or move.
+ *
+ * @author Bernardo Martins
+ */
+public final class GridFsTransferResult {
+
+    private final long files;
+    private final long bytes;
+    private final Duration elapsed;
+
+    GridFsTransferResult(long files, long bytes, Duration elapsed) {
+        this.files = files;
+        this.bytes = bytes;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * Combines the results of transfers that ran concurrently
+     *
+     * @param other must not be {@literal null}
+     * @return the combined result
+     */
+    GridFsTransferResult and(GridFsTransferResult other) {
+        Duration longest = elapsed.compareTo(other.elapsed) >= 0 ? elapsed : other.elapsed;
+        return new GridFsTransferResult(files + other.files, bytes + other.bytes, longest);
+    }
+
+    /**
+     * Gets the number of files transferred
+     *
+     * @return the number of files
+     */
+    public long getFiles() {
+        return files;
+    }
+
+    /**
+     * Gets the number of content bytes transferred
+     *
+     * @return the number of bytes
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Gets the time the transfer took
+     *
+     * @return the elapsed time
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Gets the transfer throughput in files
+     *
+     * @return files per second
+     */
+    public double getFilesPerSecond() {
+        return perSecond(files);
+    }
+
+    /**
+     * Gets the transfer throughput in bytes
+     *
+     * @return bytes per second
+     */
+    public double getBytesPerSecond() {
+        return perSecond(bytes);
+    }
+
+    private double perSecond(long value) {
+        long nanos = elapsed.toNanos();
+        return nanos == 0 ? 0 : value * 1_000_000_000d / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d files, %d bytes in %d ms (%.1f files/s, %.1f bytes/s)",
+                files, bytes, elapsed.toMillis(), getFilesPerSecond(), getBytesPerSecond());
+    }
+}
@@ -0,0 +1,141 @@
+package pt.bsamartins.spring.data.mongo.gridfs;
+
+import com.mongodb.client.gridfs.codecs.GridFSFileCodec;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.mongodb.reactivestreams.client.ChangeStreamPublisher;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Turns the change stream of a bucket's files collection into {@link GridFsEvent}s. GridFS only inserts the file
+ * document once all chunks are written, so its insertion marks the file as completely stored.
+ *
+ * @author Bernardo Martins
+ */
+class GridFsWatch {
+
+    private static final String FULL_DOCUMENT_PREFIX = "fullDocument.";
+    private static final List<String> LOGICAL_OPERATORS = Arrays.asList("$and", "$or", "$nor");
+
+    private final MongoDatabase db;
+    private final String bucket;
+    private final GridFSFileCodec fileCodec;
+
+    GridFsWatch(MongoDatabase db, String bucket) {
+        this.db = db;
+        this.bucket = bucket;
+        this.fileCodec = new GridFSFileCodec(db.getCodecRegistry());
+    }
+
+    /**
+     * Watches the files matching the given filter. Deletions only carry the file id, so they are emitted for every
+     * file regardless of the filter.
+     */
+    Flux<GridFsEvent> watch(Document filter, @Nullable GridFsResumeTokenStore tokenStore, @Nullable String watchName) {
+
+        if (tokenStore == null) {
+            return watch(filter, (BsonDocument) null);
+        }
+
+        return tokenStore.load(watchName)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMapMany(token -> watch(filter, token.orElse(null)))
+                .concatMap(event -> Mono.just(event)
+                        .concatWith(tokenStore.save(watchName, event.getResumeToken()).then(Mono.<GridFsEvent>empty())));
+    }
+
+    private Flux<GridFsEvent> watch(Document filter, @Nullable BsonDocument resumeToken) {
+
+        ChangeStreamPublisher<BsonDocument> changes = db.getCollection(bucket + ".files")
+                .watch(Collections.singletonList(new Document("$match", match(filter))), BsonDocument.class)
+                .fullDocument(FullDocument.UPDATE_LOOKUP);
+
+        if (resumeToken != null) {
+            changes = changes.resumeAfter(resumeToken);
+        }
+
+        return Flux.from(changes)
+                .takeWhile(change -> change.getOperationType() != OperationType.INVALIDATE)
+                .flatMap(change -> Mono.justOrEmpty(toEvent(change, fileCodec)));
+    }
+
+    /**
+     * Maps a change of the files collection, {@literal null} for operations that do not concern a single file.
+     */
+    @Nullable
+    static GridFsEvent toEvent(ChangeStreamDocument<BsonDocument> change, GridFSFileCodec fileCodec) {
+
+        GridFsEvent.Type type;
+
+        switch (change.getOperationType()) {
+            case INSERT:
+                type = GridFsEvent.Type.STORED;
+                break;
+            case UPDATE:
+            case REPLACE:
+                type = GridFsEvent.Type.METADATA_UPDATED;
+                break;
+            case DELETE:
+                type = GridFsEvent.Type.DELETED;
+                break;
+            default:
+                return null;
+        }
+
+        BsonDocument fullDocument = change.getFullDocument();
+        GridFSFile file = fullDocument == null ? null
+                : fileCodec.decode(new BsonDocumentReader(fullDocument), DecoderContext.builder().build());
+
+        return new GridFsEvent(type, change.getDocumentKey().get("_id"), file, change.getResumeToken());
+    }
+
+    static Document match(Document filter) {
+
+        Document changed = new Document("operationType", new Document("$in", Arrays.asList("insert", "update", "replace")));
+
+        if (!filter.isEmpty()) {
+            changed = new Document("$and", Arrays.asList(changed, prefixFields(filter)));
+        }
+
+        return new Document("$or", Arrays.asList(new Document("operationType", "delete"), changed));
+    }
+
+    /**
+     * Rewrites the fields of a filter on the files collection to the full document of a change. Top level operators
+     * other than {@code $and}, {@code $or} and {@code $nor} cannot be rewritten and are rejected.
+     */
+    @SuppressWarnings("unchecked")
+    static Document prefixFields(Document filter) {
+
+        Document prefixed = new Document();
+
+        filter.forEach((key, value) -> {
+            if (LOGICAL_OPERATORS.contains(key)) {
+                prefixed.put(key, ((List<Document>) value).stream().map(GridFsWatch::prefixFields).collect(toList()));
+            } else if (key.startsWith("$")) {
+                throw new IllegalArgumentException(String.format("Operator `%s` is not supported when watching files", key));
+            } else {
+                prefixed.put(FULL_DOCUMENT_PREFIX + key, value);
+            }
+        });
+
+        return prefixed;
+    }
+}
@@ -0,0 +1,152 @@
+package pt.bsamartins.spring.data.mongo.gridfs;
+
+import org.bson.BSONException;
+import org.bson.BsonDocument;
+import org.bson.BsonInvalidOperationException;
+import org.bson.BsonObjectId;
+import org.bson.BsonTimestamp;
+import org.bson.ByteBuf;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.types.ObjectId;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * Token returned when storing a file, carrying the operation and cluster time the server reported for the write so
+ * that later reads routed to secondaries can wait for it in a causally consistent session. Tokens can be handed to
+ * clients with {@link #encode()} and read back, e.g. by another application instance, with {@link #decode(String)}.
+ *
+ * @author Bernardo Martins
+ */
+public final class GridFsWriteToken {
+
+    private static final String ID_FIELD = "id";
+    private static final String OPERATION_TIME_FIELD = "operationTime";
+    private static final String CLUSTER_TIME_FIELD = "clusterTime";
+
+    private final ObjectId id;
+    private final @Nullable BsonTimestamp operationTime;
+    private final @Nullable BsonDocument clusterTime;
+
+    /**
+     *
+     * @param id must not be {@literal null}
+     */
+    GridFsWriteToken(ObjectId id) {
+        this(id, null, null);
+    }
+
+    /**
+     *
+     * @param id must not be {@literal null}
+     * @param operationTime can be {@literal null}
+     * @param clusterTime can be {@literal null}
+     */
+    GridFsWriteToken(ObjectId id, @Nullable BsonTimestamp operationTime, @Nullable BsonDocument clusterTime) {
+        Assert.notNull(id, "id must not be null");
+
+        this.id = id;
+        this.operationTime = operationTime;
+        this.clusterTime = clusterTime;
+    }
+
+    /**
+     * Gets the id of the stored file
+     *
+     * @return the file id
+     */
+    public ObjectId getId() {
+        return id;
+    }
+
+    /**
+     * Gets the operation time the server reported for the write
+     *
+     * @return the operation time or {@literal null} when the write was not done in a causally consistent session
+     */
+    @Nullable
+    public BsonTimestamp getOperationTime() {
+        return operationTime;
+    }
+
+    /**
+     * Gets the cluster time the server reported for the write
+     *
+     * @return the cluster time or {@literal null} when the server does not report it
+     */
+    @Nullable
+    public BsonDocument getClusterTime() {
+        return clusterTime;
+    }
+
+    /**
+     * Encodes this token into a URL safe string
+     *
+     * @return the encoded token
+     */
+    public String encode() {
+        BsonDocument document = new BsonDocument(ID_FIELD, new BsonObjectId(id));
+
+        if (operationTime != null) {
+            document.append(OPERATION_TIME_FIELD, operationTime);
+        }
+        if (clusterTime != null) {
+            document.append(CLUSTER_TIME_FIELD, clusterTime);
+        }
+
+        ByteBuf buffer = new RawBsonDocument(document, new BsonDocumentCodec()).getByteBuffer();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * Decodes a token encoded with {@link #encode()}
+     *
+     * @param encoded must not be {@literal null} or empty
+     * @return the token
+     * @throws IllegalArgumentException if the given string is not an encoded token
+     */
+    public static GridFsWriteToken decode(String encoded) {
+        Assert.hasText(encoded, "encoded must not be null or empty");
+
+        try {
+            BsonDocument document = new RawBsonDocument(Base64.getUrlDecoder().decode(encoded));
+
+            BsonTimestamp operationTime = document.containsKey(OPERATION_TIME_FIELD) ? document.getTimestamp(OPERATION_TIME_FIELD) : null;
+            BsonDocument clusterTime = document.containsKey(CLUSTER_TIME_FIELD) ? document.getDocument(CLUSTER_TIME_FIELD) : null;
+
+            return new GridFsWriteToken(document.getObjectId(ID_FIELD).getValue(), operationTime, clusterTime);
+        } catch (BSONException | BsonInvalidOperationException e) {
+            throw new IllegalArgumentException(String.format("Invalid GridFsWriteToken `%s`", encoded), e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        GridFsWriteToken that = (GridFsWriteToken) o;
+        return id.equals(that.id) && Objects.equals(operationTime, that.operationTime)
+                && Objects.equals(clusterTime, that.clusterTime);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, operationTime, clusterTime);
+    }
+
+    @Override
+    public String toString() {
+        return "GridFsWriteToken{id=" + id + ", operationTime=" + operationTime + "}";
+    }
+}
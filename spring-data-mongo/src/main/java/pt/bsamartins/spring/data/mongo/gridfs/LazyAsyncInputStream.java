@@ -0,0 +1,47 @@
+package pt.bsamartins.spring.data.mongo.gridfs;
+
+import com.mongodb.reactivestreams.client.Success;
+import com.mongodb.reactivestreams.client.gridfs.AsyncInputStream;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link AsyncInputStream} that only opens the underlying stream once a read is first subscribed to.
+ *
+ * @author Bernardo Martins
+ */
+class LazyAsyncInputStream implements AsyncInputStream {
+
+    private final Mono<AsyncInputStream> delegate;
+    private volatile AsyncInputStream opened;
+
+    LazyAsyncInputStream(Mono<? extends AsyncInputStream> opener) {
+        this.delegate = Mono.<AsyncInputStream>from(opener)
+                .doOnNext(stream -> opened = stream)
+                .cache();
+    }
+
+    @Override
+    public Publisher<Integer> read(ByteBuffer dst) {
+        return delegate.flatMap(stream -> Mono.from(stream.read(dst)));
+    }
+
+    @Override
+    public Publisher<Success> close() {
+        return Mono.defer(() -> {
+            AsyncInputStream current = opened;
+            return current == null ? Mono.just(Success.SUCCESS) : Mono.from(current.close());
+        });
+    }
+
+    /**
+     * Checks whether the underlying stream was opened
+     *
+     * @return {@literal true} once content was read
+     */
+    boolean isOpen() {
+        return opened != null;
+    }
+}
@@ -0,0 +1,81 @@
+package pt.bsamartins.spring.data.mongo.gridfs;
+
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import org.bson.BsonBoolean;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link GridFsCheckpointStore} keeping its checkpoints in a MongoDB collection.
+ *
+ * @author Bernardo Martins
+ */
+public class MongoGridFsCheckpointStore implements GridFsCheckpointStore {
+
+    private static final String DEFAULT_COLLECTION = "gridfs.checkpoints";
+    private static final String COMPLETED_FIELD = "completed";
+
+    private final ReactiveMongoDatabaseFactory databaseFactory;
+    private final String collectionName;
+
+    /**
+     * Creates a new {@link MongoGridFsCheckpointStore} using the default collection.
+     *
+     * @param databaseFactory must not be {@literal null}
+     */
+    public MongoGridFsCheckpointStore(ReactiveMongoDatabaseFactory databaseFactory) {
+        this(databaseFactory, DEFAULT_COLLECTION);
+    }
+
+    /**
+     * Creates a new {@link MongoGridFsCheckpointStore}.
+     *
+     * @param databaseFactory must not be {@literal null}
+     * @param collectionName must not be {@literal null} or empty
+     */
+    public MongoGridFsCheckpointStore(ReactiveMongoDatabaseFactory databaseFactory, String collectionName) {
+        Assert.notNull(databaseFactory, "databaseFactory must not be null");
+        Assert.hasText(collectionName, "collectionName must not be null or empty");
+
+        this.databaseFactory = databaseFactory;
+        this.collectionName = collectionName;
+    }
+
+    @Override
+    public Mono<State> getState(String checkpointName, BsonValue fileId) {
+        return Mono.from(getCollection().find(key(checkpointName, fileId)).first())
+                .map(checkpoint -> checkpoint.getBoolean(COMPLETED_FIELD, BsonBoolean.FALSE).getValue() ? State.COMPLETED : State.IN_PROGRESS)
+                .defaultIfEmpty(State.PENDING);
+    }
+
+    @Override
+    public Mono<Void> markInProgress(String checkpointName, BsonValue fileId) {
+        return saveState(checkpointName, fileId, false);
+    }
+
+    @Override
+    public Mono<Void> markCompleted(String checkpointName, BsonValue fileId) {
+        return saveState(checkpointName, fileId, true);
+    }
+
+    private Mono<Void> saveState(String checkpointName, BsonValue fileId, boolean completed) {
+        BsonDocument key = key(checkpointName, fileId);
+        BsonDocument document = key.clone().append(COMPLETED_FIELD, BsonBoolean.valueOf(completed));
+        return Mono.from(getCollection().replaceOne(key, document, new UpdateOptions().upsert(true)))
+                .then();
+    }
+
+    private BsonDocument key(String checkpointName, BsonValue fileId) {
+        return new BsonDocument("_id", new BsonDocument("checkpoint", new BsonString(checkpointName))
+                .append("file", fileId));
+    }
+
+    private MongoCollection<BsonDocument> getCollection() {
+        return databaseFactory.getMongoDatabase().getCollection(collectionName, BsonDocument.class);
+    }
+}
@@ -0,0 +1,68 @@
+package pt.bsamartins.spring.data.mongo.gridfs;
+
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link GridFsResumeTokenStore} keeping its tokens in a MongoDB collection.
+ *
+ * @author Bernardo Martins
+ */
+public class MongoGridFsResumeTokenStore implements GridFsResumeTokenStore {
+
+    private static final String DEFAULT_COLLECTION = "gridfs.resumeTokens";
+    private static final String TOKEN_FIELD = "token";
+
+    private final ReactiveMongoDatabaseFactory databaseFactory;
+    private final String collectionName;
+
+    /**
+     * Creates a new {@link MongoGridFsResumeTokenStore} using the default collection.
+     *
+     * @param databaseFactory must not be {@literal null}
+     */
+    public MongoGridFsResumeTokenStore(ReactiveMongoDatabaseFactory databaseFactory) {
+        this(databaseFactory, DEFAULT_COLLECTION);
+    }
+
+    /**
+     * Creates a new {@link MongoGridFsResumeTokenStore}.
+     *
+     * @param databaseFactory must not be {@literal null}
+     * @param collectionName must not be {@literal null} or empty
+     */
+    public MongoGridFsResumeTokenStore(ReactiveMongoDatabaseFactory databaseFactory, String collectionName) {
+        Assert.notNull(databaseFactory, "databaseFactory must not be null");
+        Assert.hasText(collectionName, "collectionName must not be null or empty");
+
+        this.databaseFactory = databaseFactory;
+        this.collectionName = collectionName;
+    }
+
+    @Override
+    public Mono<BsonDocument> load(String watchName) {
+        return Mono.from(getCollection().find(key(watchName)).first())
+                .map(document -> document.getDocument(TOKEN_FIELD));
+    }
+
+    @Override
+    public Mono<Void> save(String watchName, BsonDocument resumeToken) {
+        BsonDocument key = key(watchName);
+        BsonDocument document = key.clone().append(TOKEN_FIELD, resumeToken);
+        return Mono.from(getCollection().replaceOne(key, document, new UpdateOptions().upsert(true)))
+                .then();
+    }
+
+    private BsonDocument key(String watchName) {
+        return new BsonDocument("_id", new BsonString(watchName));
+    }
+
+    private MongoCollection<BsonDocument> getCollection() {
+        return databaseFactory.getMongoDatabase().getCollection(collectionName, BsonDocument.class);
+    }
+}
@@ -0,0 +1,205 @@
+package pt.bsamartins.spring.data.mongo.gridfs;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Merges publishers that are each sorted by the same {@link Comparator} into a single sorted sequence. Only a few
+ * elements of every source are buffered, an element is emitted once every source still running has one to compare
+ * it with.
+ *
+ * @author Bernardo Martins
+ */
+class OrderedMerge<T> implements Publisher<T> {
+
+    private final List<? extends Publisher<? extends T>> sources;
+    private final Comparator<? super T> comparator;
+    private final int prefetch;
+
+    OrderedMerge(List<? extends Publisher<? extends T>> sources, Comparator<? super T> comparator, int prefetch) {
+        this.sources = sources;
+        this.comparator = comparator;
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> actual) {
+        MergeSubscription<T> subscription = new MergeSubscription<>(actual, comparator, sources.size(), prefetch);
+        actual.onSubscribe(subscription);
+        subscription.subscribeTo(sources);
+    }
+
+    private static final class MergeSubscription<T> implements Subscription {
+
+        private final Subscriber<? super T> actual;
+        private final Comparator<? super T> comparator;
+        private final List<Source<T>> sources;
+
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+        private volatile boolean cancelled;
+        private boolean terminated;
+
+        MergeSubscription(Subscriber<? super T> actual, Comparator<? super T> comparator, int count, int prefetch) {
+            this.actual = actual;
+            this.comparator = comparator;
+            this.sources = new ArrayList<>(count);
+
+            for (int i = 0; i < count; i++) {
+                sources.add(new Source<>(this, prefetch));
+            }
+        }
+
+        void subscribeTo(List<? extends Publisher<? extends T>> publishers) {
+            for (int i = 0; i < publishers.size() && !cancelled; i++) {
+                publishers.get(i).subscribe(sources.get(i));
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                onError(new IllegalArgumentException("Request must be positive, was " + n));
+                return;
+            }
+
+            long current;
+            do {
+                current = requested.get();
+            } while (current != Long.MAX_VALUE && !requested.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            sources.forEach(Source::dispose);
+            drain();
+        }
+
+        void onError(Throwable t) {
+            error.compareAndSet(null, t);
+            drain();
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+
+            do {
+                long r = requested.get();
+                long emitted = 0;
+
+                while (!terminated) {
+
+                    if (cancelled) {
+                        terminated = true;
+                        sources.forEach(source -> source.queue.clear());
+                        break;
+                    }
+
+                    Throwable t = error.get();
+                    if (t != null) {
+                        terminated = true;
+                        sources.forEach(Source::dispose);
+                        actual.onError(t);
+                        break;
+                    }
+
+                    Source<T> min = null;
+                    T minValue = null;
+                    boolean waiting = false;
+
+                    for (Source<T> source : sources) {
+                        boolean done = source.done;
+                        T value = source.queue.peek();
+
+                        if (value == null) {
+                            waiting |= !done;
+                        } else if (minValue == null || comparator.compare(value, minValue) < 0) {
+                            min = source;
+                            minValue = value;
+                        }
+                    }
+
+                    if (waiting) {
+                        break;
+                    }
+
+                    if (min == null) {
+                        terminated = true;
+                        actual.onComplete();
+                        break;
+                    }
+
+                    if (emitted == r) {
+                        break;
+                    }
+
+                    min.queue.poll();
+                    actual.onNext(minValue);
+                    min.request(1);
+                    emitted++;
+                }
+
+                if (emitted != 0 && r != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+
+    private static final class Source<T> extends BaseSubscriber<T> {
+
+        private final MergeSubscription<T> parent;
+        private final int prefetch;
+        private final Queue<T> queue = new ConcurrentLinkedQueue<>();
+        private volatile boolean done;
+
+        Source(MergeSubscription<T> parent, int prefetch) {
+            this.parent = parent;
+            this.prefetch = prefetch;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            subscription.request(prefetch);
+        }
+
+        @Override
+        protected void hookOnNext(T value) {
+            queue.offer(value);
+            parent.drain();
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            done = true;
+            parent.drain();
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            done = true;
+            parent.onError(throwable);
+        }
+    }
+}
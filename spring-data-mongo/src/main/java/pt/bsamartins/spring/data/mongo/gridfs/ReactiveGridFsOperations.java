@@ -21,6 +21,7 @@ import com.mongodb.reactivestreams.client.gridfs.GridFSDownloadStream;
 import org.bson.Document;
 import org.bson.types.ObjectId;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.gridfs.GridFsResource;
 import org.springframework.lang.Nullable;
@@ -117,6 +118,20 @@ public interface ReactiveGridFsOperations {
 	Mono<ObjectId> store(AsyncInputStream content, @Nullable String filename, @Nullable String contentType,
                          @Nullable Document metadata);
 
+	/**
+	 * Stores the given content into a file with the given name and content type using the given metadata, returning a
+	 * token that lets {@link #getResource(String, GridFsWriteToken)} see the file even when reads are routed to
+	 * secondaries.
+	 *
+	 * @param content must not be {@literal null}.
+	 * @param filename must not be {@literal null} or empty.
+	 * @param contentType can be {@literal null}.
+	 * @param metadata can be {@literal null}.
+	 * @return the {@link GridFsWriteToken} of the {@link com.mongodb.client.gridfs.model.GridFSFile} just created.
+	 */
+	Mono<GridFsWriteToken> storeWithToken(AsyncInputStream content, @Nullable String filename,
+                                          @Nullable String contentType, @Nullable Document metadata);
+
 	/**
 	 * Returns all files matching the given query. Note, that currently {@link Sort} criterias defined at the
 	 * {@link Query} will not be regarded as MongoDB does not support ordering for GridFS file access.
@@ -153,6 +168,28 @@ public interface ReactiveGridFsOperations {
 	 */
 	Mono<ReactiveGridFsResource> getResource(String filename);
 
+	/**
+	 * Returns the {@link ReactiveGridFsResource} with the given file name, evaluating the given validators against the
+	 * file document only. A resource matching them reports {@link ReactiveGridFsResource#isNotModified()} and its
+	 * content is never read.
+	 *
+	 * @param filename must not be {@literal null}.
+	 * @param ifNoneMatch entity tags as sent in an {@literal If-None-Match} header, can be {@literal null}.
+	 * @param ifModifiedSince time in milliseconds since the epoch, negative if absent.
+	 * @return the resource if it exists or an empty {@link Mono}.
+	 */
+	Mono<ReactiveGridFsResource> getResource(String filename, @Nullable String ifNoneMatch, long ifModifiedSince);
+
+	/**
+	 * Returns the {@link ReactiveGridFsResource} written with the given token, reading from a member guaranteed to
+	 * have replicated it.
+	 *
+	 * @param filename must not be {@literal null}.
+	 * @param token must not be {@literal null}.
+	 * @return the resource if it exists or an empty {@link Mono}.
+	 */
+	Mono<ReactiveGridFsResource> getResource(String filename, GridFsWriteToken token);
+
 	/**
 	 * Returns all {@link GridFSDownloadStream}s matching the given file name pattern.
 	 *
@@ -160,4 +197,65 @@ public interface ReactiveGridFsOperations {
 	 * @return Stream of resources
 	 */
 	Flux<ReactiveGridFsResource> getResources(String filenamePattern);
+
+	/**
+	 * Creates the given index on the files collection unless it already exists. Keys are used as they are, so keys of
+	 * metadata fields must be given with the {@literal metadata.} prefix.
+	 *
+	 * @param index must not be {@literal null}, keys of metadata fields prefixed with {@literal metadata.}.
+	 * @return the name of the index.
+	 */
+	Mono<String> ensureIndex(IndexDefinition index);
+
+	/**
+	 * Creates an index on the files collection for every top level property of the given metadata type annotated
+	 * with {@link org.springframework.data.mongodb.core.index.Indexed}, unless it already exists.
+	 *
+	 * @param metadataType must not be {@literal null}.
+	 * @return the names of the indexes.
+	 */
+	Flux<String> ensureMetadataIndexes(Class<?> metadataType);
+
+	/**
+	 * Watches the files matching the given {@link Query}. Requires a replica set. Deletions only carry the file id and
+	 * are emitted regardless of the query.
+	 *
+	 * @param query must not be {@literal null}, top level criteria can only be combined with {@code $and}, {@code $or}
+	 *          and {@code $nor}.
+	 * @return infinite {@link Flux} of {@link GridFsEvent}s.
+	 */
+	Flux<GridFsEvent> watch(Query query);
+
+	/**
+	 * Watches the files matching the given {@link Query}, resuming from the position last saved for the given name.
+	 * The position is saved once each event was emitted.
+	 *
+	 * @param query must not be {@literal null}.
+	 * @param tokenStore must not be {@literal null}.
+	 * @param watchName must not be {@literal null} or empty.
+	 * @return infinite {@link Flux} of {@link GridFsEvent}s.
+	 */
+	Flux<GridFsEvent> watch(Query query, GridFsResumeTokenStore tokenStore, String watchName);
+
+	/**
+	 * Copies all files matching the given {@link Query} into the target described by the given options. Files keep
+	 * their ids, so the target must be a different bucket or database, which may have the same name on another
+	 * cluster, and a different file with the same id in the target fails the copy with a
+	 * {@link org.springframework.dao.DuplicateKeyException}.
+	 *
+	 * @param query must not be {@literal null}.
+	 * @param options must not be {@literal null}.
+	 * @return the number of files and bytes copied and the achieved throughput.
+	 */
+	Mono<GridFsTransferResult> copy(Query query, GridFsTransferOptions options);
+
+	/**
+	 * Moves all files matching the given {@link Query} into the target described by the given options. Each file is
+	 * deleted from this bucket once it has been completely copied.
+	 *
+	 * @param query must not be {@literal null}.
+	 * @param options must not be {@literal null}.
+	 * @return the number of files and bytes moved and the achieved throughput.
+	 */
+	Mono<GridFsTransferResult> move(Query query, GridFsTransferOptions options);
 }
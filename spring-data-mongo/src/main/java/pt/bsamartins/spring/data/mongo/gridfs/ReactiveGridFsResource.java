@@ -3,32 +3,43 @@ package pt.bsamartins.spring.data.mongo.gridfs;
 import com.mongodb.client.gridfs.model.GridFSFile;
 import com.mongodb.reactivestreams.client.gridfs.AsyncInputStream;
 import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.lang.Nullable;
 import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Mono;
 
 import java.util.Optional;
 
 
 /**
- * Representation of a reactive GridFS resource
+ * Representation of a reactive GridFS resource. The content stream is only opened once it is first read from.
  *
  * @author Bernardo Martins
  */
 public final class ReactiveGridFsResource {
 
+    private static final String WEAK_ETAG_PREFIX = "W/";
+
     private GridFSFile file;
     private AsyncInputStream asyncInputStream;
+    private GridFsMetadataMapper metadataMapper;
+    private boolean notModified;
 
     /**
      *
      * @param file must not be {@literal null}
-     * @param asyncInputStream must not be {@literal null}
+     * @param opener must not be {@literal null}, subscribed to when the content is first read
+     * @param metadataMapper must not be {@literal null}
      */
-    ReactiveGridFsResource(GridFSFile file, AsyncInputStream asyncInputStream) {
+    ReactiveGridFsResource(GridFSFile file, Mono<? extends AsyncInputStream> opener, GridFsMetadataMapper metadataMapper) {
         Assert.notNull(file, "file must not be null");
-        Assert.notNull(asyncInputStream, "asyncInputStream must not be null");
+        Assert.notNull(opener, "opener must not be null");
+        Assert.notNull(metadataMapper, "metadataMapper must not be null");
 
         this.file = file;
-        this.asyncInputStream = asyncInputStream;
+        this.asyncInputStream = new LazyAsyncInputStream(opener);
+        this.metadataMapper = metadataMapper;
     }
 
     /**
@@ -60,6 +71,20 @@ public final class ReactiveGridFsResource {
                 .orElse(null);
     }
 
+    /**
+     * Reads the file metadata as the given type. The metadata is only mapped when this method is called.
+     *
+     * @param type must not be {@literal null}
+     * @return the metadata or {@literal null} if the file has none
+     */
+    @Nullable
+    public <T> T getMetadata(Class<T> type) {
+        Assert.notNull(type, "type must not be null");
+
+        Document metadata = file.getMetadata();
+        return metadata == null ? null : metadataMapper.read(metadata, type);
+    }
+
     /**
      * Gets the resource content length
      *
@@ -69,6 +94,36 @@ public final class ReactiveGridFsResource {
         return file.getLength();
     }
 
+    /**
+     * Gets the entity tag of the resource, the content md5 or, when absent, the id and upload date
+     *
+     * @return the quoted entity tag
+     */
+    public String getETag() {
+        String md5 = file.getMD5();
+        String tag = StringUtils.hasText(md5) ? md5 : idToString(file.getId()) + "-" + file.getUploadDate().getTime();
+        return "\"" + tag + "\"";
+    }
+
+    /**
+     * Gets the time the resource was last modified, i.e. its upload date
+     *
+     * @return the last modified time in milliseconds since the epoch
+     */
+    public long lastModified() {
+        return file.getUploadDate().getTime();
+    }
+
+    /**
+     * Checks whether the resource was looked up with validators it matched, in which case the content does not need
+     * to be read
+     *
+     * @return {@literal true} if the caller already has the current content
+     */
+    public boolean isNotModified() {
+        return notModified;
+    }
+
     /**
      * Gets the stream to the file
      *
@@ -77,4 +132,45 @@ public final class ReactiveGridFsResource {
     public AsyncInputStream getAsyncInputStream() {
         return asyncInputStream;
     }
+
+    /**
+     * Evaluates the given validators with the semantics of the HTTP {@literal If-None-Match} and
+     * {@literal If-Modified-Since} headers, the latter only being considered when no entity tag is given.
+     *
+     * @param ifNoneMatch can be {@literal null}
+     * @param ifModifiedSince negative if absent
+     * @return this
+     */
+    ReactiveGridFsResource checkNotModified(@Nullable String ifNoneMatch, long ifModifiedSince) {
+        if (StringUtils.hasText(ifNoneMatch)) {
+            this.notModified = matchesETag(ifNoneMatch);
+        } else if (ifModifiedSince >= 0) {
+            this.notModified = lastModified() / 1000 <= ifModifiedSince / 1000;
+        }
+        return this;
+    }
+
+    private boolean matchesETag(String ifNoneMatch) {
+        String etag = getETag();
+        for (String candidate : StringUtils.commaDelimitedListToStringArray(ifNoneMatch)) {
+            candidate = candidate.trim();
+            if (candidate.startsWith(WEAK_ETAG_PREFIX)) {
+                candidate = candidate.substring(WEAK_ETAG_PREFIX.length());
+            }
+            if ("*".equals(candidate) || etag.equals(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String idToString(BsonValue id) {
+        if (id.isObjectId()) {
+            return id.asObjectId().getValue().toHexString();
+        }
+        if (id.isString()) {
+            return id.asString().getValue();
+        }
+        return id.toString();
+    }
 }
@@ -1,19 +1,28 @@
 package pt.bsamartins.spring.data.mongo.gridfs;
 
+import com.mongodb.ClientSessionOptions;
+import com.mongodb.ReadPreference;
 import com.mongodb.client.gridfs.model.GridFSFile;
 import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import com.mongodb.reactivestreams.client.MongoClient;
 import com.mongodb.reactivestreams.client.MongoDatabase;
 import com.mongodb.reactivestreams.client.gridfs.AsyncInputStream;
 import com.mongodb.reactivestreams.client.gridfs.GridFSBucket;
 import com.mongodb.reactivestreams.client.gridfs.GridFSBuckets;
+import com.mongodb.session.ClientSession;
+import org.bson.BsonDocument;
 import org.bson.BsonObjectId;
+import org.bson.BsonValue;
 import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
 import org.springframework.data.mongodb.core.convert.MongoConverter;
 import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.gridfs.AntPathExtension;
 import org.springframework.lang.Nullable;
@@ -22,7 +31,11 @@ import org.springframework.util.StringUtils;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import static org.springframework.data.mongodb.core.query.Query.query;
 import static org.springframework.data.mongodb.gridfs.GridFsCriteria.whereFilename;
@@ -32,15 +45,27 @@ import static org.springframework.data.mongodb.gridfs.GridFsCriteria.whereFilena
  *
  * @author Bernardo Martins
  */
-public class ReactiveGridFsTemplate implements ReactiveGridFsOperations {
+public class ReactiveGridFsTemplate implements ReactiveGridFsOperations, InitializingBean {
 
 	private Logger LOGGER = LoggerFactory.getLogger(ReactiveGridFsTemplate.class);
 
+	private static final String DEFAULT_BUCKET = "fs";
+
+	private static final ClientSessionOptions CAUSALLY_CONSISTENT = ClientSessionOptions.builder()
+			.causallyConsistent(true)
+			.build();
+
 	private final ReactiveMongoDatabaseFactory reactiveMongoDatabaseFactory;
 
 	private final String bucket;
 	private final MongoConverter converter;
 	private final QueryMapper queryMapper;
+	private final GridFsMetadataMapper metadataMapper;
+
+	private @Nullable ReadPreference readPreference;
+	private @Nullable GridFsQueryDiagnostics queryDiagnostics;
+	private @Nullable MongoClient mongoClient;
+	private List<Class<?>> metadataTypes = Collections.emptyList();
 
 	/**
 	 * Creates a new {@link ReactiveGridFsTemplate} using the given {@link ReactiveMongoDatabaseFactory} and {@link MongoConverter}.
@@ -69,6 +94,71 @@ public class ReactiveGridFsTemplate implements ReactiveGridFsOperations {
 		this.bucket = bucket;
 
 		this.queryMapper = new QueryMapper(converter);
+		this.metadataMapper = new GridFsMetadataMapper(converter);
+	}
+
+	/**
+	 * Sets the {@link CodecRegistry} used to write and read typed metadata, e.g. the database registry combined with a
+	 * {@link org.bson.codecs.pojo.PojoCodecProvider}. Metadata classes without a codec in the registry are mapped by the
+	 * {@link MongoConverter}.
+	 *
+	 * @param codecRegistry can be {@literal null} to map all metadata with the {@link MongoConverter}.
+	 */
+	public void setMetadataCodecRegistry(@Nullable CodecRegistry codecRegistry) {
+		this.metadataMapper.setCodecRegistry(codecRegistry);
+	}
+
+	/**
+	 * Sets the {@link ReadPreference} used to read file documents and chunks, e.g.
+	 * {@link ReadPreference#secondaryPreferred(long, TimeUnit)}. Writes and deletes always go to the primary. Reads
+	 * qualified with a {@link GridFsWriteToken} only use it when a {@link #setMongoClient(MongoClient) MongoClient} is
+	 * set, otherwise they go to the primary.
+	 *
+	 * @param readPreference can be {@literal null} to use the database default.
+	 */
+	public void setReadPreference(@Nullable ReadPreference readPreference) {
+		this.readPreference = readPreference;
+	}
+
+	/**
+	 * Enables explaining a sample of the queries run against the files collection to report collection scans and slow
+	 * plans.
+	 *
+	 * @param queryDiagnostics can be {@literal null} to disable diagnostics.
+	 */
+	public void setQueryDiagnostics(@Nullable GridFsQueryDiagnostics queryDiagnostics) {
+		this.queryDiagnostics = queryDiagnostics;
+	}
+
+	/**
+	 * Sets the {@link MongoClient} the database factory connects through. Files stored with a {@link GridFsWriteToken}
+	 * are then written in a causally consistent session, so reads qualified with the token can wait on a secondary
+	 * until it has applied the write.
+	 *
+	 * @param mongoClient can be {@literal null} to read files qualified with a token from the primary.
+	 */
+	public void setMongoClient(@Nullable MongoClient mongoClient) {
+		this.mongoClient = mongoClient;
+	}
+
+	/**
+	 * Sets the metadata types whose {@link org.springframework.data.mongodb.core.index.Indexed} properties are indexed
+	 * on initialization.
+	 *
+	 * @param metadataTypes must not contain {@literal null}.
+	 * @see #ensureMetadataIndexes(Class)
+	 */
+	public void setMetadataTypes(Class<?>... metadataTypes) {
+		Assert.noNullElements(metadataTypes, "Metadata types must not contain null!");
+		this.metadataTypes = Arrays.asList(metadataTypes);
+	}
+
+	/**
+	 * Ensures the indexes of the metadata types set with {@link #setMetadataTypes(Class[])}.
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		ensureMetadataIndexes().blockLast();
 	}
 
 	@Override
@@ -99,14 +189,7 @@ public class ReactiveGridFsTemplate implements ReactiveGridFsOperations {
 	@Override
 	public Mono<ObjectId> store(AsyncInputStream content, @Nullable String filename, @Nullable String contentType, @Nullable Object metadata) {
 
-		Document document = null;
-
-		if (metadata != null) {
-			document = new Document();
-			converter.write(metadata, document);
-		}
-
-		return store(content, filename, contentType, document);
+		return doStore(null, content, filename, contentType, metadata);
 	}
 
 	@Override
@@ -116,9 +199,60 @@ public class ReactiveGridFsTemplate implements ReactiveGridFsOperations {
 
 	@Override
 	public Mono<ObjectId> store(AsyncInputStream content, @Nullable String filename, @Nullable String contentType, @Nullable Document metadata) {
+		return doStore(null, content, filename, contentType, metadata);
+	}
+
+	/**
+	 * Stores the given content into a file with the given id.
+	 */
+	Mono<ObjectId> store(ObjectId id, AsyncInputStream content, @Nullable String filename, @Nullable String contentType,
+			@Nullable Object metadata) {
+
+		Assert.notNull(id, "Id must not be null!");
+
+		return doStore(id, content, filename, contentType, metadata);
+	}
+
+	@Override
+	public Mono<GridFsWriteToken> storeWithToken(AsyncInputStream content, @Nullable String filename,
+			@Nullable String contentType, @Nullable Document metadata) {
+		return storeWithToken(null, content, filename, contentType, metadata);
+	}
+
+	/**
+	 * Stores the given content into a file with the given id, within a causally consistent session when a
+	 * {@link MongoClient} is set.
+	 */
+	Mono<GridFsWriteToken> storeWithToken(@Nullable ObjectId id, AsyncInputStream content, @Nullable String filename,
+			@Nullable String contentType, @Nullable Object metadata) {
 
 		Assert.notNull(content, "InputStream must not be null!");
 
+		GridFSUploadOptions options = uploadOptions(contentType, metadata);
+		MongoClient client = mongoClient;
+
+		if (client == null) {
+			return upload(null, id, content, filename, options).map(GridFsWriteToken::new);
+		}
+
+		return Mono.<ClientSession> from(client.startSession(CAUSALLY_CONSISTENT))
+				.flatMap(session -> upload(session, id, content, filename, options)
+						.map(fileId -> new GridFsWriteToken(fileId, session.getOperationTime(), session.getClusterTime()))
+						.doFinally(signal -> session.close()));
+	}
+
+	private Mono<ObjectId> doStore(@Nullable ObjectId id, AsyncInputStream content, @Nullable String filename, @Nullable String contentType, @Nullable Object metadata) {
+
+		Assert.notNull(content, "InputStream must not be null!");
+
+		return upload(null, id, content, filename, uploadOptions(contentType, metadata));
+	}
+
+	/**
+	 * Builds the upload options, writing typed metadata straight into the file's metadata document.
+	 */
+	private GridFSUploadOptions uploadOptions(@Nullable String contentType, @Nullable Object metadata) {
+
 		GridFSUploadOptions options = new GridFSUploadOptions();
 
 		Document mData = new Document();
@@ -127,25 +261,51 @@ public class ReactiveGridFsTemplate implements ReactiveGridFsOperations {
 			mData.put(GridsFsHeaderConstants.CONTENT_TYPE_FIELD, contentType);
 		}
 
-		if (metadata != null) {
-			mData.putAll(metadata);
+		if (metadata instanceof Document) {
+			mData.putAll((Document) metadata);
+		} else if (metadata != null) {
+			metadataMapper.write(metadata, mData);
 		}
 
-		options.metadata(mData);
+		return options.metadata(mData);
+	}
+
+	private Mono<ObjectId> upload(@Nullable ClientSession session, @Nullable ObjectId id, AsyncInputStream content,
+			@Nullable String filename, GridFSUploadOptions options) {
+
+		GridFSBucket gridFs = getGridFs();
+		Mono<ObjectId> upload;
+
+		if (id == null) {
+			upload = Mono.from(session == null ? gridFs.uploadFromStream(filename, content, options)
+					: gridFs.uploadFromStream(session, filename, content, options));
+		} else {
+			BsonObjectId fileId = new BsonObjectId(id);
+			upload = Mono.from(session == null ? gridFs.uploadFromStream(fileId, filename, content, options)
+					: gridFs.uploadFromStream(session, fileId, filename, content, options)).then(Mono.just(id));
+		}
 
-		return Mono.from(getGridFs().uploadFromStream(filename, content, options))
-				.doOnNext(id -> LOGGER.info("Saved file `{}` with id `{}`", filename, id));
+		return upload
+				.doOnNext(fileId -> LOGGER.info("Saved file `{}` with id `{}`", filename, fileId));
 	}
 
 	@Override
 	public Flux<GridFSFile> find(Query query) {
+		return find(query, getReadGridFs());
+	}
+
+	private Flux<GridFSFile> find(Query query, GridFSBucket gridFs) {
 
 		Assert.notNull(query, "Query must not be null!");
 
 		Document queryObject = getMappedQuery(query.getQueryObject());
 		Document sortObject = getMappedQuery(query.getSortObject());
 
-		return Flux.from(getGridFs().find(queryObject).sort(sortObject));
+		Flux<GridFSFile> files = Flux.from(gridFs.find(queryObject).sort(sortObject));
+		GridFsQueryDiagnostics diagnostics = queryDiagnostics;
+
+		return diagnostics == null ? files : diagnostics.observe(files, reactiveMongoDatabaseFactory.getMongoDatabase(),
+				getFilesCollectionName(), queryObject, sortObject);
 	}
 
 	@Override
@@ -155,14 +315,69 @@ public class ReactiveGridFsTemplate implements ReactiveGridFsOperations {
 
 	@Override
 	public Mono<Void> delete(Query query) {
-		return find(query).flatMap(x -> getGridFs().delete(((BsonObjectId) x.getId()).getValue()))
+		GridFSBucket gridFs = getGridFs();
+		return find(query, gridFs).flatMap(x -> gridFs.delete(((BsonObjectId) x.getId()).getValue()))
 			.then();
 	}
 
 	@Override
 	public Mono<ReactiveGridFsResource> getResource(String location) {
 		return findOne(query(whereFilename().is(location)))
-				.map(file -> new ReactiveGridFsResource(file, getGridFs().openDownloadStream(file.getFilename())));
+				.map(this::toResource);
+	}
+
+	@Override
+	public Mono<ReactiveGridFsResource> getResource(String location, GridFsWriteToken token) {
+
+		Assert.notNull(token, "GridFsWriteToken must not be null!");
+
+		MongoClient client = mongoClient;
+		Query query = query(whereFilename().is(location).and("_id").is(token.getId()));
+
+		if (client == null || !isCausalRead(readPreference, token)) {
+
+			GridFSBucket gridFs = readPreference != null && readPreference.isSlaveOk()
+					? getGridFs().withReadPreference(ReadPreference.primary()) : getReadGridFs();
+
+			return find(query, gridFs)
+					.next()
+					.map(file -> toResource(file, gridFs));
+		}
+
+		GridFSBucket gridFs = getReadGridFs();
+		Document queryObject = getMappedQuery(query.getQueryObject());
+
+		return startSession(client, token)
+				.flatMap(session -> Mono.from(gridFs.find(session, queryObject).first())
+						.doFinally(signal -> session.close()))
+				.map(file -> new ReactiveGridFsResource(file, startSession(client, token)
+						.map(session -> new SessionBoundAsyncInputStream(gridFs.openDownloadStream(session, file.getObjectId()), session)),
+						metadataMapper));
+	}
+
+	/**
+	 * Checks whether a read qualified with the given token may go to the members selected by the given
+	 * {@link ReadPreference}, which requires the write to have been done in a causally consistent session.
+	 */
+	static boolean isCausalRead(@Nullable ReadPreference readPreference, GridFsWriteToken token) {
+		return readPreference != null && readPreference.isSlaveOk() && token.getOperationTime() != null;
+	}
+
+	private static Mono<ClientSession> startSession(MongoClient client, GridFsWriteToken token) {
+
+		return Mono.<ClientSession> from(client.startSession(CAUSALLY_CONSISTENT))
+				.doOnNext(session -> {
+					session.advanceOperationTime(token.getOperationTime());
+					if (token.getClusterTime() != null) {
+						session.advanceClusterTime(token.getClusterTime());
+					}
+				});
+	}
+
+	@Override
+	public Mono<ReactiveGridFsResource> getResource(String location, @Nullable String ifNoneMatch, long ifModifiedSince) {
+		return getResource(location)
+				.map(resource -> resource.checkNotModified(ifNoneMatch, ifModifiedSince));
 	}
 
 	@Override
@@ -176,18 +391,139 @@ public class ReactiveGridFsTemplate implements ReactiveGridFsOperations {
 
 		if (path.isPattern()) {
 			return find(query(whereFilename().regex(path.toRegex())))
-					.map(file -> new ReactiveGridFsResource(file, getGridFs().openDownloadStream(file.getFilename())));
+					.map(this::toResource);
 		}
 
 		return getResource(locationPattern).flux();
 	}
 
+	@Override
+	public Mono<String> ensureIndex(IndexDefinition index) {
+
+		Assert.notNull(index, "IndexDefinition must not be null!");
+
+		return Mono.from(reactiveMongoDatabaseFactory.getMongoDatabase().getCollection(getFilesCollectionName())
+				.createIndex(index.getIndexKeys(), GridFsIndexes.toIndexOptions(index.getIndexOptions())))
+				.doOnNext(name -> LOGGER.debug("Ensured index `{}` on `{}`", name, getFilesCollectionName()));
+	}
+
+	@Override
+	public Flux<String> ensureMetadataIndexes(Class<?> metadataType) {
+
+		Assert.notNull(metadataType, "Metadata type must not be null!");
+
+		return Flux.fromIterable(GridFsIndexes.metadataIndexes(converter.getMappingContext(), metadataType))
+				.concatMap(this::ensureIndex);
+	}
+
+	/**
+	 * Ensures the indexes of the metadata types set with {@link #setMetadataTypes(Class[])}.
+	 */
+	Flux<String> ensureMetadataIndexes() {
+		return Flux.fromIterable(metadataTypes).concatMap(this::ensureMetadataIndexes);
+	}
+
+	@Override
+	public Flux<GridFsEvent> watch(Query query) {
+
+		Assert.notNull(query, "Query must not be null!");
+
+		return new GridFsWatch(reactiveMongoDatabaseFactory.getMongoDatabase(), getBucketName())
+				.watch(getMappedQuery(query.getQueryObject()), null, null);
+	}
+
+	@Override
+	public Flux<GridFsEvent> watch(Query query, GridFsResumeTokenStore tokenStore, String watchName) {
+
+		Assert.notNull(query, "Query must not be null!");
+		Assert.notNull(tokenStore, "GridFsResumeTokenStore must not be null!");
+		Assert.hasText(watchName, "Watch name must not be null or empty!");
+
+		return new GridFsWatch(reactiveMongoDatabaseFactory.getMongoDatabase(), getBucketName())
+				.watch(getMappedQuery(query.getQueryObject()), tokenStore, watchName);
+	}
+
+	@Override
+	public Mono<GridFsTransferResult> copy(Query query, GridFsTransferOptions options) {
+		return transfer(query, options, false);
+	}
+
+	@Override
+	public Mono<GridFsTransferResult> move(Query query, GridFsTransferOptions options) {
+		return transfer(query, options, true);
+	}
+
+	private Mono<GridFsTransferResult> transfer(Query query, GridFsTransferOptions options, boolean deleteSource) {
+
+		Assert.notNull(query, "Query must not be null!");
+
+		return transfer(getMappedQuery(query.getQueryObject()), options, deleteSource);
+	}
+
+	private Mono<GridFsTransferResult> transfer(Document filter, GridFsTransferOptions options, boolean deleteSource) {
+
+		Assert.notNull(options, "GridFsTransferOptions must not be null!");
+
+		ReactiveMongoDatabaseFactory targetFactory = options.getDatabaseFactory() == null ? reactiveMongoDatabaseFactory
+				: options.getDatabaseFactory();
+		String targetBucket = options.getBucket() == null ? getBucketName() : options.getBucket();
+
+		MongoDatabase source = reactiveMongoDatabaseFactory.getMongoDatabase();
+		MongoDatabase target = targetFactory.getMongoDatabase();
+
+		Assert.isTrue(targetFactory != reactiveMongoDatabaseFactory || !targetBucket.equals(getBucketName()),
+				"Transfer target must not be the source bucket!");
+
+		GridFsTransfer transfer = new GridFsTransfer(source, getBucketName(), target, targetBucket, options, deleteSource);
+
+		return transfer.execute(filter);
+	}
+
+	/**
+	 * Lists the id and filename of every file, read from the primary.
+	 */
+	Flux<BsonDocument> findFileKeys() {
+
+		return Flux.from(reactiveMongoDatabaseFactory.getMongoDatabase().getCollection(getFilesCollectionName(), BsonDocument.class)
+				.withReadPreference(ReadPreference.primary())
+				.find()
+				.projection(new Document("_id", 1).append("filename", 1)));
+	}
+
+	/**
+	 * Moves the files with the given ids, which are used as they are rather than mapped like a {@link Query}.
+	 */
+	Mono<GridFsTransferResult> move(List<? extends BsonValue> ids, GridFsTransferOptions options) {
+		return transfer(new Document("_id", new Document("$in", ids)), options, true);
+	}
+
+	private ReactiveGridFsResource toResource(GridFSFile file) {
+		return toResource(file, getReadGridFs());
+	}
+
+	private ReactiveGridFsResource toResource(GridFSFile file, GridFSBucket gridFs) {
+		return new ReactiveGridFsResource(file, Mono.fromSupplier(() -> gridFs.openDownloadStream(file.getId())), metadataMapper);
+	}
+
 	private Document getMappedQuery(Document query) {
-		return queryMapper.getMappedObject(query, Optional.empty());
+		return query.isEmpty() ? query : queryMapper.getMappedObject(query, Optional.empty());
 	}
 
 	private GridFSBucket getGridFs() {
 		MongoDatabase db = reactiveMongoDatabaseFactory.getMongoDatabase();
 		return bucket == null ? GridFSBuckets.create(db) : GridFSBuckets.create(db, bucket);
 	}
+
+	private GridFSBucket getReadGridFs() {
+		GridFSBucket gridFs = getGridFs();
+		return readPreference == null ? gridFs : gridFs.withReadPreference(readPreference);
+	}
+
+	private String getBucketName() {
+		return bucket == null ? DEFAULT_BUCKET : bucket;
+	}
+
+	private String getFilesCollectionName() {
+		return getBucketName() + ".files";
+	}
 }
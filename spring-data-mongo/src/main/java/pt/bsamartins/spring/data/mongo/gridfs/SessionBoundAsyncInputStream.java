@@ -0,0 +1,36 @@
+package pt.bsamartins.spring.data.mongo.gridfs;
+
+import com.mongodb.reactivestreams.client.Success;
+import com.mongodb.reactivestreams.client.gridfs.AsyncInputStream;
+import com.mongodb.session.ClientSession;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link AsyncInputStream} reading within a {@link ClientSession} that is closed together with the stream.
+ *
+ * @author Bernardo Martins
+ */
+class SessionBoundAsyncInputStream implements AsyncInputStream {
+
+    private final AsyncInputStream delegate;
+    private final ClientSession session;
+
+    SessionBoundAsyncInputStream(AsyncInputStream delegate, ClientSession session) {
+        this.delegate = delegate;
+        this.session = session;
+    }
+
+    @Override
+    public Publisher<Integer> read(ByteBuffer dst) {
+        return delegate.read(dst);
+    }
+
+    @Override
+    public Publisher<Success> close() {
+        return Mono.from(delegate.close())
+                .doFinally(signal -> session.close());
+    }
+}
@@ -0,0 +1,457 @@
+package pt.bsamartins.spring.data.mongo.gridfs;
+
+import com.mongodb.ReadPreference;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.gridfs.AsyncInputStream;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.types.ObjectId;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * {@link ReactiveGridFsOperations} implementation striping files across several databases. Each file is placed by
+ * consistent hashing of its filename, or of its id when stored without a filename, so lookups by filename go to a
+ * single database while queries are fanned out to all of them in parallel.
+ *
+ * @author Bernardo Martins
+ */
+public class ShardedReactiveGridFsTemplate implements ReactiveGridFsOperations, InitializingBean {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ShardedReactiveGridFsTemplate.class);
+
+	private static final int REBALANCE_BATCH_SIZE = 100;
+	private static final int MERGE_PREFETCH = 32;
+
+	private final MongoConverter converter;
+	private final String bucket;
+
+	private volatile List<ReactiveGridFsTemplate> nodes = Collections.emptyList();
+	private volatile ConsistentHash<ReactiveGridFsTemplate> ring = new ConsistentHash<>(ConsistentHash.DEFAULT_VIRTUAL_NODES);
+	private @Nullable ReadPreference readPreference;
+	private @Nullable CodecRegistry metadataCodecRegistry;
+	private @Nullable GridFsQueryDiagnostics queryDiagnostics;
+	private @Nullable MongoClient mongoClient;
+	private final AtomicInteger rebalancing = new AtomicInteger();
+	private Class<?>[] metadataTypes = new Class<?>[0];
+
+	/**
+	 * Creates a new {@link ShardedReactiveGridFsTemplate} using the given {@link ReactiveMongoDatabaseFactory}s and
+	 * {@link MongoConverter}.
+	 *
+	 * @param databaseFactories must not be {@literal null} or empty, always in the same order.
+	 * @param converter must not be {@literal null}.
+	 */
+	public ShardedReactiveGridFsTemplate(List<ReactiveMongoDatabaseFactory> databaseFactories, MongoConverter converter) {
+		this(databaseFactories, converter, null);
+	}
+
+	/**
+	 * Creates a new {@link ShardedReactiveGridFsTemplate} using the given {@link ReactiveMongoDatabaseFactory}s and
+	 * {@link MongoConverter}.
+	 *
+	 * @param databaseFactories must not be {@literal null} or empty, always in the same order.
+	 * @param converter must not be {@literal null}.
+	 * @param bucket optional parameter
+	 */
+	public ShardedReactiveGridFsTemplate(List<ReactiveMongoDatabaseFactory> databaseFactories, MongoConverter converter,
+			@Nullable String bucket) {
+
+		Assert.notEmpty(databaseFactories, "ReactiveMongoDatabaseFactories must not be empty!");
+		Assert.notNull(converter, "MongoConverter must not be null!");
+
+		this.converter = converter;
+		this.bucket = bucket;
+
+		databaseFactories.forEach(this::register);
+	}
+
+	/**
+	 * Sets the {@link ReadPreference} used by every database.
+	 *
+	 * @param readPreference can be {@literal null} to use the database default.
+	 * @see ReactiveGridFsTemplate#setReadPreference(ReadPreference)
+	 */
+	public void setReadPreference(@Nullable ReadPreference readPreference) {
+		this.readPreference = readPreference;
+		nodes.forEach(node -> node.setReadPreference(readPreference));
+	}
+
+	/**
+	 * Sets the {@link CodecRegistry} used to write and read typed metadata on every database.
+	 *
+	 * @param codecRegistry can be {@literal null} to map all metadata with the {@link MongoConverter}.
+	 * @see ReactiveGridFsTemplate#setMetadataCodecRegistry(CodecRegistry)
+	 */
+	public void setMetadataCodecRegistry(@Nullable CodecRegistry codecRegistry) {
+		this.metadataCodecRegistry = codecRegistry;
+		nodes.forEach(node -> node.setMetadataCodecRegistry(codecRegistry));
+	}
+
+	/**
+	 * Enables query diagnostics on every database.
+	 *
+	 * @param queryDiagnostics can be {@literal null} to disable diagnostics.
+	 * @see ReactiveGridFsTemplate#setQueryDiagnostics(GridFsQueryDiagnostics)
+	 */
+	public void setQueryDiagnostics(@Nullable GridFsQueryDiagnostics queryDiagnostics) {
+		this.queryDiagnostics = queryDiagnostics;
+		nodes.forEach(node -> node.setQueryDiagnostics(queryDiagnostics));
+	}
+
+	/**
+	 * Sets the {@link MongoClient} every database is reached through.
+	 *
+	 * @param mongoClient can be {@literal null} to read files qualified with a token from the primary.
+	 * @see ReactiveGridFsTemplate#setMongoClient(MongoClient)
+	 */
+	public void setMongoClient(@Nullable MongoClient mongoClient) {
+		this.mongoClient = mongoClient;
+		nodes.forEach(node -> node.setMongoClient(mongoClient));
+	}
+
+	/**
+	 * Sets the metadata types indexed on every database on initialization and when a database is added.
+	 *
+	 * @param metadataTypes must not contain {@literal null}.
+	 * @see ReactiveGridFsTemplate#setMetadataTypes(Class[])
+	 */
+	public void setMetadataTypes(Class<?>... metadataTypes) {
+		Assert.noNullElements(metadataTypes, "Metadata types must not contain null!");
+		this.metadataTypes = Arrays.copyOf(metadataTypes, metadataTypes.length);
+		nodes.forEach(node -> node.setMetadataTypes(metadataTypes));
+	}
+
+	/**
+	 * Ensures the indexes of the metadata types set with {@link #setMetadataTypes(Class[])} on every database.
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		fanOut(ReactiveGridFsTemplate::ensureMetadataIndexes).blockLast();
+	}
+
+	/**
+	 * Adds a database once subscribed to and moves the files it now owns away from the other databases. New files are
+	 * placed on it right away, while files still waiting to be moved remain readable from their previous database until
+	 * the rebalance completes. A failed rebalance keeps that fallback until a later one completes.
+	 *
+	 * @param databaseFactory must not be {@literal null}.
+	 * @param options controls the parallelism and checkpointing of the rebalance, its other settings are ignored, must
+	 *          not be {@literal null}.
+	 * @return the files and bytes moved to the new database.
+	 */
+	public Mono<GridFsTransferResult> addNode(ReactiveMongoDatabaseFactory databaseFactory, GridFsTransferOptions options) {
+
+		Assert.notNull(databaseFactory, "ReactiveMongoDatabaseFactory must not be null!");
+		Assert.notNull(options, "GridFsTransferOptions must not be null!");
+
+		GridFsTransferOptions rebalanceOptions = new GridFsTransferOptions()
+				.databaseFactory(databaseFactory)
+				.bucket(bucket)
+				.parallelism(options.getParallelism());
+
+		if (options.getCheckpointStore() != null) {
+			rebalanceOptions.checkpoint(options.getCheckpointStore(), options.getCheckpointName());
+		}
+
+		return Mono.defer(() -> {
+
+			List<ReactiveGridFsTemplate> previous;
+			ReactiveGridFsTemplate added;
+
+			synchronized (this) {
+				previous = nodes;
+				rebalancing.incrementAndGet();
+				added = register(databaseFactory);
+			}
+
+			return added.ensureMetadataIndexes()
+					.thenMany(Flux.fromIterable(previous))
+					.flatMap(node -> rebalance(node, added, rebalanceOptions))
+					.reduce(GridFsTransferResult::and)
+					.defaultIfEmpty(new GridFsTransferResult(0, 0, Duration.ZERO))
+					.doOnSuccess(result -> rebalancing.decrementAndGet())
+					.doOnNext(result -> LOGGER.info("Rebalanced {} to new node", result));
+		});
+	}
+
+	private Mono<GridFsTransferResult> rebalance(ReactiveGridFsTemplate node, ReactiveGridFsTemplate added,
+			GridFsTransferOptions options) {
+
+		return node.findFileKeys()
+				.filter(file -> ring.get(routingKey(file)) == added)
+				.map(file -> file.get("_id"))
+				.buffer(REBALANCE_BATCH_SIZE)
+				.concatMap(ids -> node.move(ids, options))
+				.reduce(GridFsTransferResult::and);
+	}
+
+	@Override
+	public Mono<ObjectId> store(AsyncInputStream content, String filename) {
+		return store(content, filename, (Object) null);
+	}
+
+	@Override
+	public Mono<ObjectId> store(AsyncInputStream content, @Nullable Object metadata) {
+		return store(content, null, metadata);
+	}
+
+	@Override
+	public Mono<ObjectId> store(AsyncInputStream content, @Nullable Document metadata) {
+		return store(content, null, metadata);
+	}
+
+	@Override
+	public Mono<ObjectId> store(AsyncInputStream content, @Nullable String filename, @Nullable String contentType) {
+		return store(content, filename, contentType, (Object) null);
+	}
+
+	@Override
+	public Mono<ObjectId> store(AsyncInputStream content, @Nullable String filename, @Nullable Object metadata) {
+		return store(content, filename, null, metadata);
+	}
+
+	@Override
+	public Mono<ObjectId> store(AsyncInputStream content, @Nullable String filename, @Nullable String contentType, @Nullable Object metadata) {
+
+		if (filename != null) {
+			return ring.get(filename).store(content, filename, contentType, metadata);
+		}
+
+		ObjectId id = new ObjectId();
+		return ring.get(id.toHexString()).store(id, content, null, contentType, metadata);
+	}
+
+	@Override
+	public Mono<ObjectId> store(AsyncInputStream content, @Nullable String filename, @Nullable Document metadata) {
+		return this.store(content, filename, null, metadata);
+	}
+
+	@Override
+	public Mono<ObjectId> store(AsyncInputStream content, @Nullable String filename, @Nullable String contentType, @Nullable Document metadata) {
+		return store(content, filename, contentType, (Object) metadata);
+	}
+
+	@Override
+	public Mono<GridFsWriteToken> storeWithToken(AsyncInputStream content, @Nullable String filename,
+			@Nullable String contentType, @Nullable Document metadata) {
+
+		if (filename != null) {
+			return ring.get(filename).storeWithToken(content, filename, contentType, metadata);
+		}
+
+		ObjectId id = new ObjectId();
+		return ring.get(id.toHexString()).storeWithToken(id, content, null, contentType, metadata);
+	}
+
+	@Override
+	public Flux<GridFSFile> find(Query query) {
+
+		Assert.notNull(query, "Query must not be null!");
+
+		Comparator<GridFSFile> order = comparator(query.getSortObject());
+
+		if (order == null) {
+			return fanOut(node -> node.find(query));
+		}
+
+		List<Flux<GridFSFile>> sorted = nodes.stream().map(node -> node.find(query)).collect(Collectors.toList());
+		return Flux.from(new OrderedMerge<>(sorted, order, MERGE_PREFETCH));
+	}
+
+	@Override
+	public Mono<GridFSFile> findOne(Query query) {
+		return find(query).take(1).singleOrEmpty();
+	}
+
+	@Override
+	public Mono<Void> delete(Query query) {
+		return fanOut(node -> node.delete(query)).then();
+	}
+
+	@Override
+	public Mono<ReactiveGridFsResource> getResource(String location) {
+		return route(location, node -> node.getResource(location));
+	}
+
+	@Override
+	public Mono<ReactiveGridFsResource> getResource(String location, @Nullable String ifNoneMatch, long ifModifiedSince) {
+		return route(location, node -> node.getResource(location, ifNoneMatch, ifModifiedSince));
+	}
+
+	@Override
+	public Mono<ReactiveGridFsResource> getResource(String location, GridFsWriteToken token) {
+		return route(location, node -> node.getResource(location, token));
+	}
+
+	@Override
+	public Flux<ReactiveGridFsResource> getResources(String locationPattern) {
+		return fanOut(node -> node.getResources(locationPattern));
+	}
+
+	@Override
+	public Mono<String> ensureIndex(IndexDefinition index) {
+		return fanOut(node -> node.ensureIndex(index)).last();
+	}
+
+	@Override
+	public Flux<String> ensureMetadataIndexes(Class<?> metadataType) {
+		return fanOut(node -> node.ensureMetadataIndexes(metadataType)).distinct();
+	}
+
+	@Override
+	public Flux<GridFsEvent> watch(Query query) {
+		return fanOut(node -> node.watch(query));
+	}
+
+	/**
+	 * Watches every database, saving the position of each under the given name suffixed with its index.
+	 */
+	@Override
+	public Flux<GridFsEvent> watch(Query query, GridFsResumeTokenStore tokenStore, String watchName) {
+
+		List<ReactiveGridFsTemplate> current = nodes;
+
+		return Flux.range(0, current.size())
+				.flatMap(i -> current.get(i).watch(query, tokenStore, watchName + "#" + i), current.size());
+	}
+
+	@Override
+	public Mono<GridFsTransferResult> copy(Query query, GridFsTransferOptions options) {
+		return fanOut(node -> node.copy(query, options)).reduce(GridFsTransferResult::and);
+	}
+
+	@Override
+	public Mono<GridFsTransferResult> move(Query query, GridFsTransferOptions options) {
+		return fanOut(node -> node.move(query, options)).reduce(GridFsTransferResult::and);
+	}
+
+	/**
+	 * Looks the file up on its owner, falling back to every other database for files not moved yet while a rebalance
+	 * is pending.
+	 */
+	private <T> Mono<T> route(String location, Function<ReactiveGridFsTemplate, Mono<T>> lookup) {
+
+		ReactiveGridFsTemplate owner = ring.get(location);
+
+		if (rebalancing.get() == 0) {
+			return lookup.apply(owner);
+		}
+
+		return lookup.apply(owner)
+				.switchIfEmpty(Flux.fromIterable(nodes)
+						.filter(node -> node != owner)
+						.flatMap(lookup)
+						.next());
+	}
+
+	private <T> Flux<T> fanOut(Function<ReactiveGridFsTemplate, ? extends Publisher<T>> operation) {
+		return Flux.fromIterable(nodes).flatMap(operation);
+	}
+
+	private synchronized ReactiveGridFsTemplate register(ReactiveMongoDatabaseFactory databaseFactory) {
+
+		ReactiveGridFsTemplate node = new ReactiveGridFsTemplate(databaseFactory, converter, bucket);
+		node.setReadPreference(readPreference);
+		node.setMetadataCodecRegistry(metadataCodecRegistry);
+		node.setQueryDiagnostics(queryDiagnostics);
+		node.setMongoClient(mongoClient);
+		node.setMetadataTypes(metadataTypes);
+
+		List<ReactiveGridFsTemplate> updated = new ArrayList<>(nodes);
+		updated.add(node);
+
+		ring = ring.with("node-" + nodes.size(), node);
+		nodes = Collections.unmodifiableList(updated);
+
+		return node;
+	}
+
+	private static String routingKey(BsonDocument file) {
+
+		if (file.isString("filename")) {
+			return file.getString("filename").getValue();
+		}
+
+		BsonValue id = file.get("_id");
+		return id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.toString();
+	}
+
+	/**
+	 * Orders merged results the way each database sorted its own, for the fields of a file document.
+	 */
+	@Nullable
+	private static Comparator<GridFSFile> comparator(Document sort) {
+
+		Comparator<GridFSFile> comparator = null;
+
+		for (Map.Entry<String, Object> entry : sort.entrySet()) {
+
+			String field = entry.getKey();
+			Comparator<Object> values = Comparator.nullsFirst(ShardedReactiveGridFsTemplate::compareValues);
+			Comparator<GridFSFile> next = Comparator.comparing((GridFSFile file) -> sortValue(file, field), values);
+
+			if (((Number) entry.getValue()).intValue() < 0) {
+				next = next.reversed();
+			}
+
+			comparator = comparator == null ? next : comparator.thenComparing(next);
+		}
+
+		return comparator;
+	}
+
+	@Nullable
+	private static Object sortValue(GridFSFile file, String field) {
+		switch (field) {
+			case "_id":
+				BsonValue id = file.getId();
+				return id.isObjectId() ? id.asObjectId().getValue() : id.toString();
+			case "filename":
+				return file.getFilename();
+			case "length":
+				return file.getLength();
+			case "chunkSize":
+				return file.getChunkSize();
+			case "uploadDate":
+				return file.getUploadDate();
+			case "md5":
+				return file.getMD5();
+			default:
+				Document metadata = file.getMetadata();
+				return field.startsWith("metadata.") && metadata != null ? metadata.get(field.substring("metadata.".length())) : null;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static int compareValues(Object left, Object right) {
+		if (left instanceof Comparable && left.getClass().isInstance(right)) {
+			return ((Comparable<Object>) left).compareTo(right);
+		}
+		return left.getClass().getName().compareTo(right.getClass().getName());
+	}
+}
@@ -0,0 +1,70 @@
+package pt.bsamartins.spring.data.mongo.gridfs;
+
+import com.mongodb.client.model.CollationStrength;
+import com.mongodb.client.model.IndexOptions;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexType;
+import org.springframework.data.mongodb.core.index.GeospatialIndex;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.TextIndexDefinition;
+import org.springframework.data.mongodb.core.query.Collation;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GridFsIndexesTest {
+
+    @Test
+    public void translatesIndexOptions() {
+
+        Index index = new Index().on("metadata.owner", Sort.Direction.ASC).named("owner").unique().sparse()
+                .expire(60).collation(Collation.of("de").strength(Collation.ComparisonLevel.secondary()));
+
+        IndexOptions options = GridFsIndexes.toIndexOptions(index.getIndexOptions());
+
+        assertThat(options.getName(), is("owner"));
+        assertTrue(options.isUnique());
+        assertTrue(options.isSparse());
+        assertThat(options.getExpireAfter(TimeUnit.SECONDS), is(60L));
+        assertThat(options.getCollation().getLocale(), is("de"));
+        assertThat(options.getCollation().getStrength(), is(CollationStrength.SECONDARY));
+    }
+
+    @Test
+    public void translatesTextIndexOptions() {
+
+        TextIndexDefinition index = TextIndexDefinition.builder().onField("metadata.title", 2F)
+                .withDefaultLanguage("german").withLanguageOverride("lang").build();
+
+        IndexOptions options = GridFsIndexes.toIndexOptions(index.getIndexOptions());
+
+        assertThat(options.getWeights(), is(new Document("metadata.title", 2F)));
+        assertThat(options.getDefaultLanguage(), is("german"));
+        assertThat(options.getLanguageOverride(), is("lang"));
+    }
+
+    @Test
+    public void translatesGeospatialIndexOptions() {
+
+        GeospatialIndex index = new GeospatialIndex("metadata.location").typed(GeoSpatialIndexType.GEO_2D)
+                .withMin(-100).withMax(100).withBits(20);
+
+        IndexOptions options = GridFsIndexes.toIndexOptions(index.getIndexOptions());
+
+        assertThat(options.getMin(), is(-100D));
+        assertThat(options.getMax(), is(100D));
+        assertThat(options.getBits(), is(20));
+    }
+
+    @Test
+    public void rejectsUnknownOptions() {
+        assertThrows(IllegalArgumentException.class, () -> GridFsIndexes.toIndexOptions(new Document("hidden", true)));
+        assertThrows(IllegalArgumentException.class,
+                () -> GridFsIndexes.toIndexOptions(new Document("collation", new Document("locale", "de").append("unknown", 1))));
+    }
+}
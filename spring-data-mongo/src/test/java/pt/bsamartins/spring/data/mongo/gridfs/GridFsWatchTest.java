@@ -0,0 +1,133 @@
+package pt.bsamartins.spring.data.mongo.gridfs;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.gridfs.codecs.GridFSFileCodec;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.mongodb.reactivestreams.client.MongoClients;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GridFsWatchTest {
+
+    private final GridFSFileCodec fileCodec = new GridFSFileCodec(MongoClients.getDefaultCodecRegistry());
+    private final BsonObjectId id = new BsonObjectId(new ObjectId());
+    private final BsonDocument resumeToken = new BsonDocument("_data", new BsonString("token"));
+
+    @Test
+    public void prefixesPlainFields() {
+
+        Document prefixed = GridFsWatch.prefixFields(new Document("filename", "foo.xml")
+                .append("metadata.owner", new Document("$in", Arrays.asList("a", "b"))));
+
+        assertThat(prefixed, is(new Document("fullDocument.filename", "foo.xml")
+                .append("fullDocument.metadata.owner", new Document("$in", Arrays.asList("a", "b")))));
+    }
+
+    @Test
+    public void prefixesFieldsInsideLogicalOperators() {
+
+        Document prefixed = GridFsWatch.prefixFields(new Document("$or", Arrays.asList(
+                new Document("filename", "foo.xml"),
+                new Document("$and", Arrays.asList(new Document("length", 1), new Document("metadata.owner", "a"))))));
+
+        assertThat(prefixed, is(new Document("$or", Arrays.asList(
+                new Document("fullDocument.filename", "foo.xml"),
+                new Document("$and", Arrays.asList(new Document("fullDocument.length", 1),
+                        new Document("fullDocument.metadata.owner", "a")))))));
+    }
+
+    @Test
+    public void rejectsOtherTopLevelOperators() {
+
+        assertThrows(IllegalArgumentException.class, () -> GridFsWatch.prefixFields(new Document("$expr", new Document())));
+        assertThrows(IllegalArgumentException.class, () -> GridFsWatch.prefixFields(new Document("$text", new Document("$search", "foo"))));
+        assertThrows(IllegalArgumentException.class, () -> GridFsWatch.prefixFields(new Document("$or", Arrays.asList(
+                new Document("$where", "true")))));
+    }
+
+    @Test
+    public void matchesDeletionsRegardlessOfFilter() {
+
+        Document match = GridFsWatch.match(new Document("filename", "foo.xml"));
+
+        Document changed = new Document("operationType", new Document("$in", Arrays.asList("insert", "update", "replace")));
+        assertThat(match, is(new Document("$or", Arrays.asList(new Document("operationType", "delete"),
+                new Document("$and", Arrays.asList(changed, new Document("fullDocument.filename", "foo.xml")))))));
+    }
+
+    @Test
+    public void matchesAllChangesWithoutFilter() {
+
+        Document match = GridFsWatch.match(new Document());
+
+        assertThat(match, is(new Document("$or", Arrays.asList(new Document("operationType", "delete"),
+                new Document("operationType", new Document("$in", Arrays.asList("insert", "update", "replace")))))));
+    }
+
+    @Test
+    public void mapsInsertToStored() {
+
+        GridFsEvent event = GridFsWatch.toEvent(change(OperationType.INSERT, fileDocument()), fileCodec);
+
+        assertThat(event.getType(), is(GridFsEvent.Type.STORED));
+        assertThat(event.getId(), is(id));
+        assertThat(event.getFile().getFilename(), is("foo.xml"));
+        assertThat(event.getResumeToken(), is(resumeToken));
+    }
+
+    @Test
+    public void mapsUpdateAndReplaceToMetadataUpdated() {
+
+        GridFsEvent updated = GridFsWatch.toEvent(change(OperationType.UPDATE, fileDocument()), fileCodec);
+        GridFsEvent replaced = GridFsWatch.toEvent(change(OperationType.REPLACE, fileDocument()), fileCodec);
+
+        assertThat(updated.getType(), is(GridFsEvent.Type.METADATA_UPDATED));
+        assertThat(replaced.getType(), is(GridFsEvent.Type.METADATA_UPDATED));
+        assertThat(updated.getFile().getLength(), is(11L));
+    }
+
+    @Test
+    public void mapsDeleteToDeletedWithoutFile() {
+
+        GridFsEvent event = GridFsWatch.toEvent(change(OperationType.DELETE, null), fileCodec);
+
+        assertThat(event.getType(), is(GridFsEvent.Type.DELETED));
+        assertThat(event.getId(), is(id));
+        assertThat(event.getFile(), is(nullValue()));
+    }
+
+    @Test
+    public void ignoresInvalidate() {
+        assertNull(GridFsWatch.toEvent(change(OperationType.INVALIDATE, null), fileCodec));
+    }
+
+    private ChangeStreamDocument<BsonDocument> change(OperationType operationType, BsonDocument fullDocument) {
+        return new ChangeStreamDocument<>(resumeToken, new MongoNamespace("test.fs.files"), fullDocument,
+                new BsonDocument("_id", id), operationType, null);
+    }
+
+    private BsonDocument fileDocument() {
+        return new BsonDocument("_id", id)
+                .append("filename", new BsonString("foo.xml"))
+                .append("length", new BsonInt64(11))
+                .append("chunkSize", new BsonInt32(255 * 1024))
+                .append("uploadDate", new BsonDateTime(System.currentTimeMillis()))
+                .append("md5", new BsonString("b10a8db164e0754105b7a99be72e3fe5"))
+                .append("metadata", new BsonDocument());
+    }
+}
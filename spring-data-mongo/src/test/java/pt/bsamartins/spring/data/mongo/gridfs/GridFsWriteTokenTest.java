@@ -0,0 +1,48 @@
+package pt.bsamartins.spring.data.mongo.gridfs;
+
+import org.bson.BsonBinary;
+import org.bson.BsonDocument;
+import org.bson.BsonInt64;
+import org.bson.BsonTimestamp;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GridFsWriteTokenTest {
+
+    @Test
+    public void decodesEncodedToken() {
+
+        BsonTimestamp operationTime = new BsonTimestamp(1500000000, 3);
+        BsonDocument clusterTime = new BsonDocument("clusterTime", operationTime)
+                .append("signature", new BsonDocument("hash", new BsonBinary(new byte[20])).append("keyId", new BsonInt64(0)));
+        GridFsWriteToken token = new GridFsWriteToken(new ObjectId(), operationTime, clusterTime);
+
+        GridFsWriteToken decoded = GridFsWriteToken.decode(token.encode());
+
+        assertThat(decoded, is(token));
+        assertThat(decoded.getOperationTime(), is(operationTime));
+        assertThat(decoded.getClusterTime(), is(clusterTime));
+    }
+
+    @Test
+    public void decodesTokenWithoutOperationTime() {
+
+        GridFsWriteToken token = new GridFsWriteToken(new ObjectId());
+
+        GridFsWriteToken decoded = GridFsWriteToken.decode(token.encode());
+
+        assertThat(decoded.getId(), is(token.getId()));
+        assertNull(decoded.getOperationTime());
+        assertNull(decoded.getClusterTime());
+    }
+
+    @Test
+    public void rejectsMalformedTokens() {
+        assertThrows(IllegalArgumentException.class, () -> GridFsWriteToken.decode("not a token"));
+        assertThrows(IllegalArgumentException.class, () -> GridFsWriteToken.decode("AAAA"));
+    }
+}
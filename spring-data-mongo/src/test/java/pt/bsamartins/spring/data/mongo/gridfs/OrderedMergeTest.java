@@ -0,0 +1,46 @@
+package pt.bsamartins.spring.data.mongo.gridfs;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+public class OrderedMergeTest {
+
+    @Test
+    public void mergesSortedSources() {
+
+        Flux<Integer> merged = Flux.from(new OrderedMerge<>(Arrays.asList(Flux.just(1, 4, 7), Flux.just(2, 5), Flux.just(3, 6, 8, 9)),
+                Comparator.<Integer>naturalOrder(), 2));
+
+        StepVerifier.create(merged)
+                .expectNext(1, 2, 3, 4, 5, 6, 7, 8, 9)
+                .verifyComplete();
+    }
+
+    @Test
+    public void honoursBackpressure() {
+
+        Flux<Integer> merged = Flux.from(new OrderedMerge<>(Arrays.asList(Flux.range(0, 100).map(i -> i * 2), Flux.range(0, 100).map(i -> i * 2 + 1)),
+                Comparator.<Integer>naturalOrder(), 4));
+
+        StepVerifier.create(merged, 3)
+                .expectNext(0, 1, 2)
+                .thenRequest(2)
+                .expectNext(3, 4)
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    public void propagatesSourceErrors() {
+
+        Flux<Integer> merged = Flux.from(new OrderedMerge<>(Arrays.asList(Flux.just(1, 3), Flux.<Integer>error(new IllegalStateException("boom"))),
+                Comparator.<Integer>naturalOrder(), 2));
+
+        StepVerifier.create(merged)
+                .verifyError(IllegalStateException.class);
+    }
+}
@@ -1,12 +1,18 @@
 package pt.bsamartins.spring.data.mongo.gridfs;
 
+import com.mongodb.ReadPreference;
 import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.reactivestreams.client.MongoClient;
 import com.mongodb.reactivestreams.client.gridfs.AsyncInputStream;
+import com.mongodb.reactivestreams.client.gridfs.GridFSBuckets;
 import pt.bsamartins.spring.data.mongo.AsyncInputStreamHelper;
 import pt.bsamartins.spring.data.mongo.MongoTestConfig;
 import pt.bsamartins.spring.data.mongo.ReactiveMongoTestConfig;
 import org.bson.BsonObjectId;
+import org.bson.BsonString;
 import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.pojo.PojoCodecProvider;
 import org.bson.types.ObjectId;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -15,19 +21,30 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.core.SimpleReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
 import static org.junit.Assert.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
@@ -58,6 +75,12 @@ public class ReactiveGridFsTemplateIntegrationTest {
     @Autowired
     private ReactiveGridFsTemplate operations;
 
+    @Autowired
+    private MappingMongoConverter converter;
+
+    @Autowired
+    private MongoClient mongoClient;
+
     @BeforeEach
     public void setup() {
         byte[] data = "Hello World".getBytes();
@@ -242,13 +265,287 @@ public class ReactiveGridFsTemplateIntegrationTest {
                 .verifyComplete();
     }
 
+    @Test
+    public void copiesFilesIntoAnotherBucket() {
+
+        ObjectId reference = operations.store(asyncInputStream, "foo.xml", "application/xml").block();
+        ReactiveGridFsTemplate archive = new ReactiveGridFsTemplate(reactiveMongoDatabaseFactory, converter, "archive");
+
+        GridFsTransferResult result = operations.copy(new Query(), new GridFsTransferOptions().bucket("archive")).block();
+
+        assertThat(result.getFiles(), is(1L));
+        assertThat(result.getBytes(), is(dataLength));
+
+        GridFSFile copied = archive.findOne(query(where("_id").is(reference))).block();
+        assertNotNull(copied);
+        assertThat(copied.getLength(), is(dataLength));
+        assertThat(operations.find(new Query()).count().block(), is(1L));
+    }
+
+    @Test
+    public void movesAndRechunksFilesIntoAnotherBucket() {
+
+        ObjectId reference = operations.store(asyncInputStream, "foo.xml").block();
+        GridFSFile original = operations.findOne(query(where("_id").is(reference))).block();
+        ReactiveGridFsTemplate archive = new ReactiveGridFsTemplate(reactiveMongoDatabaseFactory, converter, "archive");
+
+        GridFsTransferResult result = operations.move(query(whereFilename().is("foo.xml")),
+                new GridFsTransferOptions().bucket("archive").chunkSizeBytes(4)).block();
+
+        assertThat(result.getFiles(), is(1L));
+
+        GridFSFile moved = archive.findOne(query(where("_id").is(reference))).block();
+        assertNotNull(moved);
+        assertThat(moved.getChunkSize(), is(4));
+        assertThat(moved.getLength(), is(dataLength));
+        assertThat(moved.getUploadDate(), is(original.getUploadDate()));
+        assertThat(moved.getMD5(), is(original.getMD5()));
+        assertNull(operations.findOne(new Query()).block());
+    }
+
+    @Test
+    public void skipsFilesAlreadyCheckpointed() {
+
+        operations.store(asyncInputStream, "foo.xml").block();
+        GridFsTransferOptions options = new GridFsTransferOptions().bucket("archive")
+                .checkpoint(new MongoGridFsCheckpointStore(reactiveMongoDatabaseFactory), "archive-foo");
+
+        assertThat(operations.copy(new Query(), options).block().getFiles(), is(1L));
+        assertThat(operations.copy(new Query(), options).block().getFiles(), is(0L));
+    }
+
+    @Test
+    public void rejectsCopyIntoSourceBucketThroughAnotherFactory() {
+
+        String databaseName = reactiveMongoDatabaseFactory.getMongoDatabase().getName();
+        ReactiveMongoDatabaseFactory sameDatabase = new SimpleReactiveMongoDatabaseFactory(mongoClient, databaseName);
+
+        operations.store(asyncInputStream, "foo.xml").block();
+
+        StepVerifier.create(operations.copy(new Query(), new GridFsTransferOptions().databaseFactory(sameDatabase)))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+
+        assertThat(operations.find(new Query()).count().block(), is(1L));
+    }
+
+    @Test
+    public void rejectsCopyIntoSourceBucketThroughSameFactory() {
+
+        assertThrows(IllegalArgumentException.class,
+                () -> operations.copy(new Query(), new GridFsTransferOptions().databaseFactory(reactiveMongoDatabaseFactory)));
+    }
+
+    @Test
+    public void failsCopyOnDifferentFileWithSameIdInTarget() {
+
+        ObjectId reference = operations.store(asyncInputStream, "foo.xml").block();
+        ReactiveGridFsTemplate archive = new ReactiveGridFsTemplate(reactiveMongoDatabaseFactory, converter, "archive");
+        archive.store(reference, toAsyncInputStream("Other content".getBytes()), "other.xml", null, null).block();
+
+        StepVerifier.create(operations.copy(new Query(), new GridFsTransferOptions().bucket("archive")))
+                .expectError(DuplicateKeyException.class)
+                .verify();
+
+        assertThat(archive.findOne(query(where("_id").is(reference))).block().getFilename(), is("other.xml"));
+    }
+
+    @Test
+    public void opensResourceContentOnlyWhenRead() {
+
+        operations.store(asyncInputStream, "foo.xml").block();
+
+        ReactiveGridFsResource resource = operations.getResources("*.xml").blockFirst();
+        LazyAsyncInputStream content = (LazyAsyncInputStream) resource.getAsyncInputStream();
+
+        assertFalse(content.isOpen());
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) dataLength);
+        Mono.from(content.read(buffer)).block();
+
+        assertTrue(content.isOpen());
+        assertThat(new String(buffer.array()), is("Hello World"));
+    }
+
+    @Test
+    public void answersConditionalLookupsFromFileDocument() {
+
+        operations.store(asyncInputStream, "foo.xml").block();
+        ReactiveGridFsResource resource = operations.getResource("foo.xml").block();
+
+        ReactiveGridFsResource byETag = operations.getResource("foo.xml", resource.getETag(), -1).block();
+        ReactiveGridFsResource byDate = operations.getResource("foo.xml", null, resource.lastModified()).block();
+        ReactiveGridFsResource stale = operations.getResource("foo.xml", "\"other\"", resource.lastModified()).block();
+
+        assertTrue(byETag.isNotModified());
+        assertTrue(byDate.isNotModified());
+        assertFalse(stale.isNotModified());
+        assertFalse(((LazyAsyncInputStream) byETag.getAsyncInputStream()).isOpen());
+    }
+
+    @Test
+    public void readsTokenWritesFromPrimaryWithoutOperationTime() {
+
+        ReactiveGridFsTemplate routed = new ReactiveGridFsTemplate(reactiveMongoDatabaseFactory, converter);
+        routed.setReadPreference(ReadPreference.secondaryPreferred(90, TimeUnit.SECONDS));
+        routed.setMongoClient(mongoClient);
+
+        GridFsWriteToken token = routed.storeWithToken(asyncInputStream, "foo.xml", null, null).block();
+        assertNull(token.getOperationTime());
+
+        ReactiveGridFsResource resource = routed.getResource("foo.xml", GridFsWriteToken.decode(token.encode())).block();
+
+        assertNotNull(resource);
+        assertThat(((BsonObjectId) resource.getId()).getValue(), is(token.getId()));
+        assertThat(resource.getContentLength(), is(dataLength));
+    }
+
+    @Test
+    public void stripesFilesAcrossDatabases() {
+
+        ReactiveMongoDatabaseFactory first = new SimpleReactiveMongoDatabaseFactory(mongoClient, "test-reactive-shard-1");
+        ReactiveMongoDatabaseFactory second = new SimpleReactiveMongoDatabaseFactory(mongoClient, "test-reactive-shard-2");
+        ShardedReactiveGridFsTemplate sharded = new ShardedReactiveGridFsTemplate(Arrays.asList(first, second), converter);
+
+        for (int i = 0; i < 20; i++) {
+            sharded.store(toAsyncInputStream("Hello World".getBytes()), String.format("file-%02d.xml", i)).block();
+        }
+
+        List<GridFSFile> files = sharded.find(new Query().with(Sort.by(Sort.Direction.ASC, "filename")))
+                .collectList()
+                .block();
+
+        assertThat(files, hasSize(20));
+        assertThat(files.get(0).getFilename(), is("file-00.xml"));
+        assertThat(files.get(19).getFilename(), is("file-19.xml"));
+        assertThat(new ReactiveGridFsTemplate(first, converter).find(new Query()).count().block(), is(lessThan(20L)));
+
+        ReactiveMongoDatabaseFactory third = new SimpleReactiveMongoDatabaseFactory(mongoClient, "test-reactive-shard-3");
+        GridFsTransferResult moved = sharded.addNode(third, new GridFsTransferOptions()).block();
+
+        assertThat(new ReactiveGridFsTemplate(third, converter).find(new Query()).count().block(), is(moved.getFiles()));
+        assertThat(sharded.getResources("*.xml").count().block(), is(20L));
+        assertNotNull(sharded.getResource("file-07.xml").block());
+    }
+
+    @Test
+    public void addsNodeOnlyOnceSubscribedAndMovesFilesWithAnyId() {
+
+        ReactiveMongoDatabaseFactory first = new SimpleReactiveMongoDatabaseFactory(mongoClient, "test-reactive-shard-1");
+        ReactiveMongoDatabaseFactory second = new SimpleReactiveMongoDatabaseFactory(mongoClient, "test-reactive-shard-2");
+        ReactiveMongoDatabaseFactory third = new SimpleReactiveMongoDatabaseFactory(mongoClient, "test-reactive-shard-3");
+        ShardedReactiveGridFsTemplate sharded = new ShardedReactiveGridFsTemplate(Arrays.asList(first, second), converter);
+
+        Mono<GridFsTransferResult> addNode = sharded.addNode(third, new GridFsTransferOptions());
+
+        for (int i = 0; i < 20; i++) {
+            sharded.store(toAsyncInputStream("Hello World".getBytes()), String.format("file-%02d.xml", i)).block();
+        }
+        Mono.from(GridFSBuckets.create(first.getMongoDatabase()).uploadFromStream(new BsonString("custom-id"), "custom.xml",
+                toAsyncInputStream("Hello World".getBytes()))).block();
+
+        assertThat(new ReactiveGridFsTemplate(third, converter).find(new Query()).count().block(), is(0L));
+
+        GridFsTransferResult moved = addNode.block();
+
+        assertThat(new ReactiveGridFsTemplate(third, converter).find(new Query()).count().block(), is(moved.getFiles()));
+        assertThat(sharded.getResources("*.xml").count().block(), is(21L));
+    }
+
+    @Test
+    public void writesAndReadsTypedMetadataWithCodec() {
+
+        ReactiveGridFsTemplate typed = new ReactiveGridFsTemplate(reactiveMongoDatabaseFactory, converter);
+        typed.setMetadataCodecRegistry(CodecRegistries.fromRegistries(
+                reactiveMongoDatabaseFactory.getMongoDatabase().getCodecRegistry(),
+                CodecRegistries.fromProviders(PojoCodecProvider.builder().register(TypedMetadata.class).build())));
+
+        TypedMetadata metadata = new TypedMetadata();
+        metadata.setOwner("alice");
+        typed.store(asyncInputStream, "foo.xml", "application/xml", metadata).block();
+
+        assertThat(typed.find(query(whereMetaData("owner").is("alice"))).count().block(), is(1L));
+
+        ReactiveGridFsResource resource = typed.getResource("foo.xml").block();
+        assertThat(resource.getMetadata(TypedMetadata.class).getOwner(), is("alice"));
+        assertThat(resource.getContentType(), is("application/xml"));
+    }
+
+    @Test
+    public void readsTypedMetadataWithConverterWhenNoCodecIsRegistered() {
+
+        Metadata metadata = new Metadata();
+        metadata.version = "1.0";
+        operations.store(asyncInputStream, "foo.xml", metadata).block();
+
+        ReactiveGridFsResource resource = operations.getResource("foo.xml").block();
+        assertThat(resource.getMetadata(Document.class).getString("version"), is("1.0"));
+    }
+
+    @Test
+    public void createsIndexesForAnnotatedMetadataIdempotently() {
+
+        assertThat(operations.ensureMetadataIndexes(TypedMetadata.class).collectList().block(),
+                contains("metadata.owner_1"));
+        assertThat(operations.ensureMetadataIndexes(TypedMetadata.class).collectList().block(),
+                contains("metadata.owner_1"));
+    }
+
+    @Test
+    public void reportsCollectionScansOfSampledQueries() throws Exception {
+
+        CompletableFuture<GridFsQueryReport> reported = new CompletableFuture<>();
+        ReactiveGridFsTemplate diagnosed = new ReactiveGridFsTemplate(reactiveMongoDatabaseFactory, converter);
+        diagnosed.setQueryDiagnostics(new GridFsQueryDiagnostics().sampleRate(1).listener(reported::complete));
+
+        diagnosed.store(asyncInputStream, "foo.xml", new Document("key", "value")).block();
+        diagnosed.find(query(whereMetaData("key").is("value"))).collectList().block();
+
+        GridFsQueryReport report = reported.get(10, TimeUnit.SECONDS);
+        assertTrue(report.isCollectionScan());
+        assertThat(report.getCollection(), is("fs.files"));
+        assertThat(report.getFilterShape(), is(new Document("metadata.key", "?")));
+    }
+
+    @Test
+    public void ensuresIndexesOfRegisteredMetadataTypesOnInitialization() {
+
+        ReactiveGridFsTemplate indexed = new ReactiveGridFsTemplate(reactiveMongoDatabaseFactory, converter);
+        indexed.setMetadataTypes(TypedMetadata.class);
+        indexed.afterPropertiesSet();
+
+        List<String> indexes = Flux.from(reactiveMongoDatabaseFactory.getMongoDatabase().getCollection("fs.files").listIndexes())
+                .map(index -> index.getString("name"))
+                .collectList()
+                .block();
+
+        assertTrue(indexes.contains("metadata.owner_1"));
+    }
+
     @AfterEach
     public void tearDown() {
         Mono.from(reactiveMongoDatabaseFactory.getMongoDatabase().drop())
                 .subscribe();
+        Flux.just("test-reactive-shard-1", "test-reactive-shard-2", "test-reactive-shard-3")
+                .flatMap(name -> mongoClient.getDatabase(name).drop())
+                .blockLast();
     }
 
     class Metadata {
         String version;
     }
+
+    public static class TypedMetadata {
+
+        @Indexed
+        private String owner;
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public void setOwner(String owner) {
+            this.owner = owner;
+        }
+    }
 }
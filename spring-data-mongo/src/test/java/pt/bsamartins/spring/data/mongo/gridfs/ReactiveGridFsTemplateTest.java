@@ -0,0 +1,31 @@
+package pt.bsamartins.spring.data.mongo.gridfs;
+
+import com.mongodb.ReadPreference;
+import org.bson.BsonTimestamp;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReactiveGridFsTemplateTest {
+
+    private final GridFsWriteToken causalToken = new GridFsWriteToken(new ObjectId(), new BsonTimestamp(42, 1), null);
+    private final GridFsWriteToken plainToken = new GridFsWriteToken(new ObjectId());
+
+    @Test
+    public void routesCausalTokenToSecondaries() {
+        assertTrue(ReactiveGridFsTemplate.isCausalRead(ReadPreference.secondaryPreferred(), causalToken));
+        assertTrue(ReactiveGridFsTemplate.isCausalRead(ReadPreference.nearest(), causalToken));
+    }
+
+    @Test
+    public void keepsTokenWithoutOperationTimeOffSecondaries() {
+        assertFalse(ReactiveGridFsTemplate.isCausalRead(ReadPreference.secondaryPreferred(), plainToken));
+    }
+
+    @Test
+    public void doesNotRouteWhenReadingFromPrimary() {
+        assertFalse(ReactiveGridFsTemplate.isCausalRead(null, causalToken));
+        assertFalse(ReactiveGridFsTemplate.isCausalRead(ReadPreference.primary(), causalToken));
+    }
+}